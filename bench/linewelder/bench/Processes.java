@@ -0,0 +1,36 @@
+package linewelder.bench;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+class Processes {
+    private Processes() {}
+
+    static List<String> java(String classpath, String... arguments) {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of("-cp", classpath));
+        command.addAll(Arrays.asList(arguments));
+        return command;
+    }
+
+    static List<String> output(List<String> command) throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        process.getOutputStream().close();
+
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = output.readLine(); line != null; line = output.readLine()) {
+                lines.add(line);
+            }
+        }
+
+        if (process.waitFor() != 0 || lines.isEmpty()) {
+            throw new IOException("Benchmark run failed: " + String.join(" ", command));
+        }
+        return lines;
+    }
+}
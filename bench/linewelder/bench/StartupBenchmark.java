@@ -0,0 +1,54 @@
+package linewelder.bench;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+// Measures time-to-first-statement of `Lox.main`: the time from starting
+// the JVM until the first statement of a script reads the clock.
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: startup_benchmark <classpath> [archive.jsa] [runs]");
+            System.exit(64);
+        }
+
+        final String classpath = args[0];
+        final String archive = args.length > 1 ? args[1] : null;
+        final int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        final Path script = Files.createTempFile("startup", ".lox");
+        try {
+            Files.writeString(script, "print clock();\nvar a = 1;\nprint a + 2;\n");
+
+            final String path = script.toString();
+            measure("no CDS", runs, Processes.java(classpath, "-Xshare:off", "linewelder.lox.Lox", path));
+            measure("JDK CDS", runs, Processes.java(classpath, "linewelder.lox.Lox", path));
+            if (archive != null) {
+                measure("AppCDS", runs, Processes.java(classpath,
+                    "-XX:SharedArchiveFile=" + archive, "linewelder.lox.Lox", path));
+            }
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    static void measure(String name, int runs, List<String> command)
+            throws IOException, InterruptedException {
+        final long[] firstStatement = new long[runs];
+        final long[] total = new long[runs];
+
+        Processes.output(command);
+        for (int i = 0; i < runs; i++) {
+            final long start = System.currentTimeMillis();
+            final String firstLine = Processes.output(command).get(0);
+            total[i] = System.currentTimeMillis() - start;
+            firstStatement[i] = Math.round(Double.parseDouble(firstLine) * 1000) - start;
+        }
+
+        Arrays.sort(firstStatement);
+        Arrays.sort(total);
+        System.out.printf("%-8s first statement %5d ms, total %5d ms (median of %d)%n",
+            name, firstStatement[runs / 2], total[runs / 2], runs);
+    }
+}
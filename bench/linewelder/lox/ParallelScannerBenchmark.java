@@ -0,0 +1,63 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Compares sequential and chunked scanning of a large synthetic script
+// (500 MB unless another size in MB is given), written to a temporary file
+// and memory-mapped like the module loader does. Both token buffers are
+// kept, so run it with a heap of about seven times the script size.
+public class ParallelScannerBenchmark {
+    private static final String BOUNDARIES = """
+        /* A comment /* with a nested one */ and a "quote
+        spanning lines */
+        var text%1$d = "a string
+        // that spans /* lines */";
+        """;
+
+    public static void main(String[] args) throws IOException {
+        final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final Path script = Files.createTempFile("jlox-bench", ".lox");
+        try {
+            generate(script, (long)megabytes * 1024 * 1024);
+            final ByteBuffer source = ModuleLoader.read(script);
+
+            for (int round = 0; round < 5; round++) {
+                final TokenBuffer sequential = measure("sequential", source, false);
+                final TokenBuffer parallel = measure("parallel", source, true);
+                if (sequential.size() != parallel.size() ||
+                    sequential.line(sequential.size() - 1) != parallel.line(parallel.size() - 1)) {
+                    throw new AssertionError("Chunked scanning produced different tokens.");
+                }
+            }
+        } finally {
+            Files.delete(script);
+        }
+    }
+
+    private static void generate(Path script, long size) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(script), StandardCharsets.UTF_8), 1 << 16)) {
+            long written = 0;
+            for (int i = 0; written < size; i++) {
+                final String sample = ScannerBenchmark.SAMPLE.formatted(i) + BOUNDARIES.formatted(i);
+                writer.write(sample);
+                written += sample.length();
+            }
+        }
+    }
+
+    private static TokenBuffer measure(String name, ByteBuffer source, boolean parallel) {
+        final long start = System.nanoTime();
+        final Diagnostics diagnostics = new Diagnostics();
+        final TokenBuffer tokens = parallel
+            ? ParallelScanner.scanTokens(source, diagnostics)
+            : new Scanner(source, diagnostics).scanTokens();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %,d tokens in %.0f ms, %.0f MB/s%n",
+            name, tokens.size(), seconds * 1000, source.limit() / seconds / 1024 / 1024);
+        return tokens;
+    }
+}
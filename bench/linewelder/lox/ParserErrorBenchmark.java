@@ -0,0 +1,45 @@
+package linewelder.lox;
+
+import java.io.*;
+
+// Parses a deliberately broken script (4 MB unless another size in MB is
+// given) and reports its errors into a discarded stream, the way a lint
+// run over many failing files spends its time.
+public class ParserErrorBenchmark {
+    private static final String BROKEN = """
+        class Broken%1$d { 1 }
+        fun missingParen%1$d(a, { print a; }
+        var x%1$d = (1 + ;
+        print x%1$d
+        if (x%1$d > ) print x%1$d;
+        for (var i = 0; i < ; i = i + 1) { print i; }
+        while (true { break; }
+        print "ok" %1$d;
+        x%1$d.y = ;
+        """;
+
+    public static void main(String[] args) {
+        final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < megabytes * 1024 * 1024; i++) {
+            builder.append(ScannerBenchmark.SAMPLE.formatted(i)).append(BROKEN.formatted(i));
+        }
+        final String source = builder.toString();
+
+        final PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int round = 0; round < 10; round++) {
+                final long start = System.nanoTime();
+                final Diagnostics diagnostics = new Diagnostics("broken.lox");
+                new Parser(new Scanner(source, diagnostics).scanTokens(), diagnostics).parse(false);
+                Lox.report(diagnostics);
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%,d errors in %.0f ms, %,.0f errors/s%n",
+                    diagnostics.errors().size(), seconds * 1000, diagnostics.errors().size() / seconds);
+            }
+        } finally {
+            System.setErr(err);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package linewelder.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Scans a large source repeatedly and reports tokens per second. Without
+// a script argument it generates a synthetic program of the given size.
+public class ScannerBenchmark {
+    static final String SAMPLE = """
+        class Point%1$d < Base {
+            init(x, y) { this.x = x; this.y = y; }
+            length%1$d() { return sqrt(this.x * this.x + this.y * this.y); }
+        }
+
+        // Sums the values below a limit.
+        fun sum%1$d(limit) {
+            var total = 0;
+            for (var i = 0; i < limit; i = i + 1) {
+                if (i != 3 and !(i >= 10) or i <= 2.5) total = total + i; else break;
+            }
+            while (false) print "unreachable %1$d";
+            return total;
+        }
+
+        var result%1$d = sum%1$d(100) / 2 - 1;
+        print result%1$d == nil ? "none" : "value";
+        """;
+
+    public static void main(String[] args) throws IOException {
+        final ByteBuffer source;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            source = ModuleLoader.read(Paths.get(args[0]));
+        } else {
+            final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; builder.length() < megabytes * 1024 * 1024; i++) {
+                builder.append(SAMPLE.formatted(i));
+            }
+            source = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (int round = 0; round < 10; round++) {
+            final long start = System.nanoTime();
+            final Diagnostics diagnostics = new Diagnostics();
+            final int tokens = new Scanner(source, diagnostics).scanTokens().size();
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d tokens in %.0f ms, %,.0f tokens/s, %.0f MB/s%n",
+                tokens, seconds * 1000, tokens / seconds, source.limit() / seconds / 1024 / 1024);
+        }
+    }
+}
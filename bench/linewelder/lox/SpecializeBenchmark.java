@@ -0,0 +1,44 @@
+package linewelder.lox;
+
+import java.util.List;
+
+// Runs an arithmetic-heavy loop with and without the type-specialized
+// binary operations, alternating between the two so both see the same
+// amount of warm-up. The JIT is disabled so the loop stays interpreted.
+public class SpecializeBenchmark {
+    private static final String SOURCE = """
+        fun run(n) {
+            var total = 0;
+            for (var i = 0; i < n; i = i + 1) {
+                var x = i * 2;
+                var y = (x + 1 - i / 4) * 0.5;
+                if (y > x) total = total - y; else total = total + y;
+            }
+            return total;
+        }
+        result = run(%d);
+        """;
+
+    public static void main(String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Jit.enabled = false;
+
+        final Diagnostics diagnostics = new Diagnostics();
+        final String source = "var result;\n" + SOURCE.formatted(iterations);
+        final List<Stmt> statements = new Parser(new Scanner(source, diagnostics).scanTokens(), diagnostics)
+            .parse(false);
+        new Resolver(diagnostics).resolve(statements);
+        if (Lox.report(diagnostics)) return;
+        new TypeInference().infer(statements);
+        final Program program = new Program(new ModuleLoader().loadImports(statements, diagnostics));
+
+        for (int round = 0; round < 10; round++) {
+            final boolean specialize = round % 2 == 1;
+            final long start = System.nanoTime();
+            new Interpreter(Limits.NONE, specialize).interpret(program);
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-12s %.0f ms, %,.0f iterations/s%n",
+                specialize ? "specialized" : "generic", seconds * 1000, iterations / seconds);
+        }
+    }
+}
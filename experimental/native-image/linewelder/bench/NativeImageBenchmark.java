@@ -0,0 +1,65 @@
+package linewelder.bench;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+// Compares the native jlox binary with the JVM launcher: startup as
+// time-to-first-statement, and peak throughput as the fastest of the
+// later iterations of a call-heavy loop.
+public class NativeImageBenchmark {
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: native_image_benchmark <classpath> <jlox binary> [runs]");
+            System.exit(64);
+        }
+
+        final String classpath = args[0];
+        final String binary = Paths.get(args[1]).toAbsolutePath().toString();
+        final int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        final Path startup = Files.createTempFile("startup", ".lox");
+        final Path throughput = Files.createTempFile("throughput", ".lox");
+        try {
+            Files.writeString(startup, "print clock();\nvar a = 1;\nprint a + 2;\n");
+            Files.writeString(throughput,
+                "class Counter { init() { this.count = 0; } add(n) { this.count = this.count + n; } }\n" +
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+                "for (var i = 0; i < " + ITERATIONS + "; i = i + 1) {\n" +
+                "    var start = clock();\n" +
+                "    var counter = Counter();\n" +
+                "    for (var j = 0; j < 100000; j = j + 1) counter.add(fib(3));\n" +
+                "    print clock() - start;\n" +
+                "}\n");
+
+            final String[] jvm = { "linewelder.lox.Lox", "--no-jit" };
+            StartupBenchmark.measure("JVM", runs, command(Processes.java(classpath, jvm), startup));
+            StartupBenchmark.measure("native", runs, command(List.of(binary), startup));
+
+            peak("JVM", command(Processes.java(classpath, jvm), throughput));
+            peak("native", command(List.of(binary), throughput));
+        } finally {
+            Files.deleteIfExists(startup);
+            Files.deleteIfExists(throughput);
+        }
+    }
+
+    private static List<String> command(List<String> launcher, Path script) {
+        final List<String> command = new ArrayList<>(launcher);
+        command.add(script.toString());
+        return command;
+    }
+
+    private static void peak(String name, List<String> command) throws IOException, InterruptedException {
+        final List<String> lines = Processes.output(command);
+        final double first = Double.parseDouble(lines.get(0));
+        double best = Double.MAX_VALUE;
+        for (final String line : lines.subList(lines.size() / 2, lines.size())) {
+            best = Math.min(best, Double.parseDouble(line));
+        }
+
+        System.out.printf("%-8s first iteration %5.0f ms, peak %5.0f ms%n", name, first * 1000, best * 1000);
+    }
+}
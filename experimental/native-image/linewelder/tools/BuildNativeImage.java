@@ -0,0 +1,37 @@
+package linewelder.tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Builds the standalone jlox binary with GraalVM's native-image. The
+// image options live in META-INF/native-image/linewelder/jlox next to
+// this source tree, which has to be on the given class path. Experimental:
+// see the README in this directory.
+public class BuildNativeImage {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2) {
+            System.err.println("Usage: build_native_image <class path> <output binary>");
+            System.exit(64);
+        }
+
+        final List<String> command = List.of(
+            nativeImage(), "-cp", args[0], "-o", args[1], "linewelder.lox.Lox");
+        final Process process = new ProcessBuilder(command).inheritIO().start();
+        System.exit(process.waitFor());
+    }
+
+    private static String nativeImage() {
+        final String name = System.getProperty("os.name").startsWith("Windows")
+            ? "native-image.cmd" : "native-image";
+
+        for (final String home : new String[] { System.getenv("GRAALVM_HOME"), System.getProperty("java.home") }) {
+            if (home == null) continue;
+
+            final Path path = Paths.get(home, "bin", name);
+            if (Files.isExecutable(path)) return path.toString();
+        }
+
+        return name;
+    }
+}
@@ -0,0 +1,20 @@
+package linewelder.lox;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// What one run has used of its Limits. The interpreter running the script
+// creates it, and every task and generator started from that run charges
+// the same budget, so work can't escape the limits by moving to another
+// thread. Call depth counts the frames live on all of those threads.
+class Budget {
+    final LongAdder statements = new LongAdder();
+    final AtomicLong instances = new AtomicLong();
+    final AtomicInteger callDepth = new AtomicInteger();
+    final long deadline;
+
+    Budget(Limits limits) {
+        deadline = System.nanoTime() + limits.maxWallTimeMillis * 1_000_000;
+    }
+}
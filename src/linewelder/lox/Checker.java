@@ -0,0 +1,90 @@
+package linewelder.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+// Scans, parses and resolves scripts without running them. Every file is
+// checked on its own task; the errors are then printed sorted by file,
+// line and column, so the output doesn't depend on scheduling.
+class Checker {
+    private record Result(Path path, List<Diagnostics.Error> errors, boolean unreadable) {}
+
+    private static final Comparator<Diagnostics.Error> POSITION =
+        Comparator.comparingInt(Diagnostics.Error::line).thenComparingInt(Diagnostics.Error::column);
+
+    private Checker() {}
+
+    static int check(List<Path> paths) {
+        final SortedSet<Path> files = new TreeSet<>();
+        for (final Path path : paths) {
+            collect(path.normalize(), files);
+        }
+
+        final List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for (final Path file : files) {
+            tasks.add(ForkJoinPool.commonPool().submit(() -> check(file)));
+        }
+
+        final StringBuilder errors = new StringBuilder();
+        int failed = 0;
+        boolean unreadable = false;
+        for (final ForkJoinTask<Result> task : tasks) {
+            final Result result = task.join();
+            if (result.unreadable) {
+                errors.append("Could not read ").append(result.path).append('.').append(System.lineSeparator());
+                unreadable = true;
+            }
+            if (!result.errors.isEmpty() || result.unreadable) failed++;
+
+            for (final Diagnostics.Error error : result.errors) {
+                errors.append(error).append(System.lineSeparator());
+            }
+        }
+
+        System.err.print(errors);
+        System.out.println("Checked " + files.size() + (files.size() == 1 ? " file, " : " files, ") +
+            failed + " failed.");
+
+        if (unreadable) return 66;
+        return failed > 0 ? 65 : 0;
+    }
+
+    private static void collect(Path path, Set<Path> files) {
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".lox"))
+                .forEach(files::add);
+        } catch (IOException | UncheckedIOException error) {
+            files.add(path);
+        }
+    }
+
+    private static Result check(Path path) {
+        final ByteBuffer source;
+        try {
+            source = ModuleLoader.read(path);
+        } catch (IOException error) {
+            return new Result(path, List.of(), true);
+        }
+
+        final Diagnostics diagnostics = new Diagnostics(path.toString());
+        final Parser parser = new Parser(ParallelScanner.scanTokens(source, diagnostics), diagnostics);
+        final List<Stmt> statements = parser.parse(false);
+        if (!diagnostics.hadError()) {
+            new Resolver(diagnostics).resolve(statements);
+        }
+
+        final List<Diagnostics.Error> errors = new ArrayList<>(diagnostics.errors());
+        errors.sort(POSITION);
+        return new Result(path, errors, false);
+    }
+}
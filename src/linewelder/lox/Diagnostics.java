@@ -0,0 +1,64 @@
+package linewelder.lox;
+
+import java.util.*;
+
+// Collects errors in memory; they are only formatted and written out,
+// in one go, when the caller reports them.
+class Diagnostics {
+    record Error(String source, int line, int column, String where, String message) {
+        @Override
+        public String toString() {
+            final StringBuilder location = new StringBuilder("line ").append(line);
+            if (column > 0) location.append(", column ").append(column);
+            if (source != null) location.append(" in ").append(source);
+            return "[" + location + "] Error" + where + ": " + message;
+        }
+    }
+
+    private final String source;
+    private final List<Error> errors = new ArrayList<>();
+
+    Diagnostics() {
+        this(null);
+    }
+
+    Diagnostics(String source) {
+        this.source = source;
+    }
+
+    Diagnostics fork() {
+        return new Diagnostics(source);
+    }
+
+    void addAll(Diagnostics other) {
+        errors.addAll(other.errors);
+    }
+
+    void error(int line, String message) {
+        error(line, 0, message);
+    }
+
+    void error(int line, int column, String message) {
+        errors.add(new Error(source, line, column, "", message));
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            errors.add(new Error(source, token.line, token.column, " at end", message));
+        } else {
+            errors.add(new Error(source, token.line, token.column, " at '" + token.lexeme + "'", message));
+        }
+    }
+
+    boolean hadError() {
+        return !errors.isEmpty();
+    }
+
+    List<Error> errors() {
+        return errors;
+    }
+
+    void clear() {
+        errors.clear();
+    }
+}
@@ -1,35 +1,79 @@
 package linewelder.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+// Only the global environment looks variables up by name. Every local
+// scope is a plain array whose size and slot indices come from the
+// resolver.
+//
+// A closure passed to spawn() shares its captured scopes with the task's
+// thread, so slots are written with release and read with acquire
+// semantics: a task that sees a new value also sees everything the
+// writer did before storing it, e.g. the fields of an instance it just
+// created. Compound updates like `count = count + 1` are still not atomic
+// across tasks.
 public class Environment {
-    private static class Uninitialized {}
+    static final Object UNINITIALIZED = new Object();
+    private static final Object NIL = new Object();
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
 
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> values;
+    private final Object[] slots;
 
     Environment() {
         enclosing = null;
+        values = new ConcurrentHashMap<>();
+        slots = null;
+        if (Metrics.enabled) Metrics.environmentsAllocated.increment();
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        values = null;
+        slots = new Object[size];
+        if (Metrics.enabled) Metrics.environmentsAllocated.increment();
     }
 
     void define(String name) {
-        values.put(name, new Uninitialized());
+        values.put(name, UNINITIALIZED);
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        values.put(name, wrap(value));
+    }
+
+    void set(int slot, Object value) {
+        SLOT.setRelease(slots, slot, value);
+    }
+
+    Object getAt(int distance, int slot) {
+        return SLOT.getAcquire(ancestor(distance).slots, slot);
+    }
+
+    Object getAt(int distance, int slot, Token name) {
+        final Object value = SLOT.getAcquire(ancestor(distance).slots, slot);
+        if (value == UNINITIALIZED) throw notInitialized(name);
+        return value;
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        SLOT.setRelease(ancestor(distance).slots, slot, value);
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    boolean isBoundTo(String name, Object value) {
+        return values.get(name) == value;
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    static Object wrap(Object value) {
+        return value == null ? NIL : value;
+    }
+
+    static Object unwrap(Object value) {
+        return value == NIL ? null : value;
     }
 
     Environment ancestor(int distance) {
@@ -42,34 +86,23 @@ public class Environment {
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            final Object value = values.get(name.lexeme);
-            if (value instanceof Uninitialized) {
-                throw new RuntimeError(name,
-                    "Variable '" + name.lexeme + "' is not initialized.");
-            }
-
-            return value;
-        }
-
-        if (enclosing != null) return enclosing.get(name);
+        final Object value = values.get(name.lexeme);
+        if (value == UNINITIALIZED) throw notInitialized(name);
+        if (value != null) return unwrap(value);
 
         throw new RuntimeError(name,
             "Undefined variable '" + name.lexeme  + "'.");
     }
 
     public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
-        }
+        if (values.replace(name.lexeme, wrap(value)) != null) return;
 
         throw new RuntimeError(name,
             "Undefined variable '" + name.lexeme  + "'.");
     }
+
+    private static RuntimeError notInitialized(Token name) {
+        return new RuntimeError(name,
+            "Variable '" + name.lexeme + "' is not initialized.");
+    }
 }
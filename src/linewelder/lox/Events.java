@@ -0,0 +1,35 @@
+package linewelder.lox;
+
+import jdk.jfr.*;
+
+final class Events {
+    private Events() {}
+
+    @Name("linewelder.lox.Script")
+    @Label("Lox Script")
+    @Category("Lox")
+    static class Script extends Event {
+        @Label("Path")
+        String path;
+    }
+
+    @Name("linewelder.lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    static class ScriptError extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("linewelder.lox.SlowCall")
+    @Label("Slow Lox Call")
+    @Category("Lox")
+    @Threshold("20 ms")
+    static class SlowCall extends Event {
+        @Label("Function")
+        String function;
+    }
+}
@@ -18,11 +18,14 @@ abstract class Expr {
         R visitUnaryExpr(Unary expr);
         R visitVariableExpr(Variable expr);
         R visitTernaryExpr(Ternary expr);
+        R visitYieldExpr(Yield expr);
     }
 
     static class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -39,6 +42,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        InferredType leftType = InferredType.UNKNOWN;
+        InferredType rightType = InferredType.UNKNOWN;
 
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -87,6 +92,9 @@ abstract class Expr {
     static class Function extends Expr {
         final List<Token> params;
         final List<Stmt> body;
+        boolean isGenerator;
+        int slots;
+        final Jit.State jit = new Jit.State();
 
         Function(List<Token> params, List<Stmt> body) {
             this.params = params;
@@ -162,6 +170,7 @@ abstract class Expr {
     static class Super extends Expr {
         final Token keyword;
         final Token method;
+        int depth = -1;
 
         Super(Token keyword, Token method) {
             this.keyword = keyword;
@@ -176,6 +185,7 @@ abstract class Expr {
 
     static class This extends Expr {
         final Token keyword;
+        int depth = -1;
 
         This(Token keyword) {
             this.keyword = keyword;
@@ -190,6 +200,7 @@ abstract class Expr {
     static class Unary extends Expr {
         final Token operator;
         final Expr right;
+        InferredType rightType = InferredType.UNKNOWN;
 
         Unary(Token operator, Expr right) {
             this.operator = operator;
@@ -204,6 +215,8 @@ abstract class Expr {
 
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot;
 
         Variable(Token name) {
             this.name = name;
@@ -232,5 +245,20 @@ abstract class Expr {
         }
     }
 
+    static class Yield extends Expr {
+        final Token keyword;
+        final Expr value;
+
+        Yield(Token keyword, Expr value) {
+            this.keyword = keyword;
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitYieldExpr(this);
+        }
+    }
+
     abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,630 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// A resolved syntax tree flattened into a few arrays. Every node is a run
+// of ints in nodes: its kind followed by its fields, where child nodes are
+// indices into the same array and tokens are indices into the token
+// table. Lexemes and other strings are stored once in a shared pool.
+//
+// This is only a storage format, used by the module cache in memory and
+// on disk and by jloxc for the program in the JAR. The parser, resolver
+// and interpreter all work on the object tree, which is decoded from it
+// whenever a module is run, so it does nothing for the memory a running
+// program takes.
+class FlatAst {
+    private static final int MAGIC = 0x4C4F5841;
+    private static final int VERSION = 5;
+
+    private static final int ASSIGN = 0, BINARY = 1, CALL = 2, GET = 3, FUNCTION = 4,
+        GROUPING = 5, LITERAL = 6, LOGICAL = 7, SET = 8, SUPER = 9, THIS = 10,
+        UNARY = 11, VARIABLE = 12, TERNARY = 13, YIELD = 14;
+    private static final int BREAK_STMT = 15, BLOCK_STMT = 16, CLASS_STMT = 17,
+        EXPRESSION_STMT = 18, FUNCTION_STMT = 19, IF_STMT = 20, IMPORT_STMT = 21,
+        METHOD_STMT = 22, PRINT_STMT = 23, RETURN_STMT = 24, VAR_STMT = 25, WHILE_STMT = 26;
+
+    private static final int NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final InferredType[] INFERRED_TYPES = InferredType.values();
+
+    private final int[] nodes;
+    private final int[] roots;
+    private final byte[] tokenTypes;
+    private final int[] tokenLines;
+    private final int[] tokenColumns;
+    private final int[] tokenLexemes;
+    private final String[] strings;
+    private final Object[] constants;
+
+    private FlatAst(int[] nodes, int[] roots, byte[] tokenTypes, int[] tokenLines, int[] tokenColumns,
+                    int[] tokenLexemes, String[] strings, Object[] constants) {
+        this.nodes = nodes;
+        this.roots = roots;
+        this.tokenTypes = tokenTypes;
+        this.tokenLines = tokenLines;
+        this.tokenColumns = tokenColumns;
+        this.tokenLexemes = tokenLexemes;
+        this.strings = strings;
+        this.constants = constants;
+    }
+
+    static FlatAst encode(List<Stmt> statements) {
+        return new Encoder().encode(statements);
+    }
+
+    List<Stmt> decode() {
+        final Token[] tokens = new Token[tokenTypes.length];
+        final List<Stmt> statements = new ArrayList<>(roots.length);
+        for (final int root : roots) {
+            statements.add(stmt(root, tokens));
+        }
+
+        return statements;
+    }
+
+    private Token token(int index, Token[] tokens) {
+        if (index < 0) return null;
+        if (tokens[index] != null) return tokens[index];
+
+        final TokenType type = TOKEN_TYPES[tokenTypes[index]];
+        final String lexeme = strings[tokenLexemes[index]];
+        final Object literal = switch (type) {
+            case NUMBER -> Double.parseDouble(lexeme);
+            case STRING -> lexeme.substring(1, lexeme.length() - 1);
+            default -> null;
+        };
+        return tokens[index] = new Token(type, lexeme, literal, tokenLines[index], tokenColumns[index]);
+    }
+
+    private Expr expr(int node, Token[] tokens) {
+        if (node < 0) return null;
+
+        int at = node + 1;
+        switch (nodes[node]) {
+            case ASSIGN -> {
+                final Expr.Assign expr = new Expr.Assign(token(nodes[at], tokens), expr(nodes[at + 1], tokens));
+                expr.depth = nodes[at + 2];
+                expr.slot = nodes[at + 3];
+                return expr;
+            }
+            case BINARY -> {
+                final Expr.Binary expr = new Expr.Binary(expr(nodes[at], tokens), token(nodes[at + 1], tokens),
+                    expr(nodes[at + 2], tokens));
+                expr.leftType = INFERRED_TYPES[nodes[at + 3]];
+                expr.rightType = INFERRED_TYPES[nodes[at + 4]];
+                return expr;
+            }
+            case CALL -> {
+                final Expr callee = expr(nodes[at++], tokens);
+                final Token paren = token(nodes[at++], tokens);
+                final List<Expr> arguments = new ArrayList<>(nodes[at]);
+                for (int i = 0, count = nodes[at++]; i < count; i++) {
+                    arguments.add(expr(nodes[at++], tokens));
+                }
+                return new Expr.Call(callee, paren, arguments);
+            }
+            case GET -> {
+                return new Expr.Get(expr(nodes[at], tokens), token(nodes[at + 1], tokens));
+            }
+            case FUNCTION -> {
+                final List<Token> params = new ArrayList<>(nodes[at]);
+                for (int i = 0, count = nodes[at++]; i < count; i++) {
+                    params.add(token(nodes[at++], tokens));
+                }
+                final List<Stmt> body = new ArrayList<>(nodes[at]);
+                for (int i = 0, count = nodes[at++]; i < count; i++) {
+                    body.add(stmt(nodes[at++], tokens));
+                }
+                final Expr.Function expr = new Expr.Function(params, body);
+                expr.isGenerator = nodes[at++] != 0;
+                expr.slots = nodes[at];
+                return expr;
+            }
+            case GROUPING -> {
+                return new Expr.Grouping(expr(nodes[at], tokens));
+            }
+            case LITERAL -> {
+                return new Expr.Literal(constants[nodes[at]]);
+            }
+            case LOGICAL -> {
+                return new Expr.Logical(expr(nodes[at], tokens), token(nodes[at + 1], tokens),
+                    expr(nodes[at + 2], tokens));
+            }
+            case SET -> {
+                return new Expr.Set(expr(nodes[at], tokens), token(nodes[at + 1], tokens),
+                    expr(nodes[at + 2], tokens));
+            }
+            case SUPER -> {
+                final Expr.Super expr = new Expr.Super(token(nodes[at], tokens), token(nodes[at + 1], tokens));
+                expr.depth = nodes[at + 2];
+                return expr;
+            }
+            case THIS -> {
+                final Expr.This expr = new Expr.This(token(nodes[at], tokens));
+                expr.depth = nodes[at + 1];
+                return expr;
+            }
+            case UNARY -> {
+                final Expr.Unary expr = new Expr.Unary(token(nodes[at], tokens), expr(nodes[at + 1], tokens));
+                expr.rightType = INFERRED_TYPES[nodes[at + 2]];
+                return expr;
+            }
+            case VARIABLE -> {
+                final Expr.Variable expr = new Expr.Variable(token(nodes[at], tokens));
+                expr.depth = nodes[at + 1];
+                expr.slot = nodes[at + 2];
+                return expr;
+            }
+            case TERNARY -> {
+                return new Expr.Ternary(expr(nodes[at], tokens), expr(nodes[at + 1], tokens),
+                    expr(nodes[at + 2], tokens));
+            }
+            case YIELD -> {
+                return new Expr.Yield(token(nodes[at], tokens), expr(nodes[at + 1], tokens));
+            }
+            default -> throw new IllegalStateException("Not an expression node: " + nodes[node]);
+        }
+    }
+
+    private Stmt stmt(int node, Token[] tokens) {
+        if (node < 0) return null;
+
+        int at = node + 1;
+        switch (nodes[node]) {
+            case BREAK_STMT -> {
+                return new Stmt.Break(token(nodes[at], tokens));
+            }
+            case BLOCK_STMT -> {
+                final int slots = nodes[at++];
+                final List<Stmt> statements = new ArrayList<>(nodes[at]);
+                for (int i = 0, count = nodes[at++]; i < count; i++) {
+                    statements.add(stmt(nodes[at++], tokens));
+                }
+                final Stmt.Block stmt = new Stmt.Block(statements);
+                stmt.slots = slots;
+                return stmt;
+            }
+            case CLASS_STMT -> {
+                final Token name = token(nodes[at++], tokens);
+                final Expr.Variable superclass = (Expr.Variable)expr(nodes[at++], tokens);
+                final int slot = nodes[at++];
+                final List<Stmt.Method> methods = new ArrayList<>(nodes[at]);
+                for (int i = 0, count = nodes[at++]; i < count; i++) {
+                    methods.add((Stmt.Method)stmt(nodes[at++], tokens));
+                }
+                final Stmt.Class stmt = new Stmt.Class(name, superclass, methods);
+                stmt.slot = slot;
+                return stmt;
+            }
+            case EXPRESSION_STMT -> {
+                return new Stmt.Expression(expr(nodes[at], tokens));
+            }
+            case FUNCTION_STMT -> {
+                final Stmt.Function stmt = new Stmt.Function(token(nodes[at], tokens),
+                    (Expr.Function)expr(nodes[at + 1], tokens));
+                stmt.slot = nodes[at + 2];
+                return stmt;
+            }
+            case IF_STMT -> {
+                return new Stmt.If(expr(nodes[at], tokens), stmt(nodes[at + 1], tokens), stmt(nodes[at + 2], tokens));
+            }
+            case IMPORT_STMT -> {
+                return new Stmt.Import(token(nodes[at], tokens), token(nodes[at + 1], tokens));
+            }
+            case METHOD_STMT -> {
+                return new Stmt.Method(token(nodes[at], tokens), (Expr.Function)expr(nodes[at + 1], tokens),
+                    nodes[at + 2] != 0);
+            }
+            case PRINT_STMT -> {
+                return new Stmt.Print(expr(nodes[at], tokens));
+            }
+            case RETURN_STMT -> {
+                final Stmt.Return stmt = new Stmt.Return(token(nodes[at], tokens), expr(nodes[at + 1], tokens));
+                stmt.isTailCall = nodes[at + 2] != 0;
+                return stmt;
+            }
+            case VAR_STMT -> {
+                final Stmt.Var stmt = new Stmt.Var(token(nodes[at], tokens), expr(nodes[at + 1], tokens));
+                stmt.slot = nodes[at + 2];
+                return stmt;
+            }
+            case WHILE_STMT -> {
+                return new Stmt.While(token(nodes[at], tokens), expr(nodes[at + 1], tokens),
+                    stmt(nodes[at + 2], tokens));
+            }
+            default -> throw new IllegalStateException("Not a statement node: " + nodes[node]);
+        }
+    }
+
+    // Approximate heap footprint in bytes, used to size the module cache.
+    long size() {
+        long size = nodes.length * 4L + roots.length * 4L + tokenTypes.length * 13L + constants.length * 16L;
+        for (final String string : strings) {
+            size += 40 + string.length();
+        }
+
+        return size;
+    }
+
+    void write(OutputStream stream) throws IOException {
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+
+        output.writeInt(strings.length);
+        for (final String string : strings) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        output.writeInt(constants.length);
+        for (final Object constant : constants) {
+            if (constant == null) {
+                output.writeByte(NIL);
+            } else if (constant instanceof Boolean value) {
+                output.writeByte(value ? TRUE : FALSE);
+            } else if (constant instanceof Double value) {
+                output.writeByte(NUMBER);
+                output.writeDouble(value);
+            } else {
+                output.writeByte(STRING);
+                final byte[] bytes = ((String)constant).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+
+        output.writeInt(tokenTypes.length);
+        output.write(tokenTypes);
+        writeInts(output, tokenLines);
+        writeInts(output, tokenColumns);
+        writeInts(output, tokenLexemes);
+
+        output.writeInt(nodes.length);
+        writeInts(output, nodes);
+        output.writeInt(roots.length);
+        writeInts(output, roots);
+        output.flush();
+    }
+
+    static FlatAst read(InputStream stream) throws IOException {
+        return read(stream, Integer.MAX_VALUE);
+    }
+
+    // Every element takes at least a byte, so no count can exceed the
+    // length of the input; checking that keeps a damaged file from
+    // allocating huge arrays. Whatever still gets through fails in
+    // decode(), which callers reading untrusted files have to expect.
+    static FlatAst read(InputStream stream, long length) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Not a compiled Lox program.");
+        }
+
+        final String[] strings = new String[readCount(input, length)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(input, length);
+        }
+
+        final Object[] constants = new Object[readCount(input, length)];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = switch (input.readByte()) {
+                case NIL -> null;
+                case FALSE -> false;
+                case TRUE -> true;
+                case NUMBER -> input.readDouble();
+                case STRING -> readString(input, length);
+                default -> throw new IOException("Not a compiled Lox program.");
+            };
+        }
+
+        final byte[] tokenTypes = new byte[readCount(input, length)];
+        input.readFully(tokenTypes);
+        final int[] tokenLines = readInts(input, tokenTypes.length);
+        final int[] tokenColumns = readInts(input, tokenTypes.length);
+        final int[] tokenLexemes = readInts(input, tokenTypes.length);
+
+        final int[] nodes = readInts(input, readCount(input, length));
+        final int[] roots = readInts(input, readCount(input, length));
+        return new FlatAst(nodes, roots, tokenTypes, tokenLines, tokenColumns, tokenLexemes, strings, constants);
+    }
+
+    private static int readCount(DataInputStream input, long length) throws IOException {
+        final int count = input.readInt();
+        if (count < 0 || count > length) throw new IOException("Not a compiled Lox program.");
+        return count;
+    }
+
+    private static String readString(DataInputStream input, long length) throws IOException {
+        final byte[] bytes = new byte[readCount(input, length)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        for (final int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream input, int count) throws IOException {
+        final int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = input.readInt();
+        }
+
+        return values;
+    }
+
+    // Children are encoded before their parent, so a node only ever refers
+    // to nodes that are already in the array.
+    private static class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private int[] nodes = new int[256];
+        private int size = 0;
+        private final Map<Token, Integer> tokens = new IdentityHashMap<>();
+        private final List<Token> tokenList = new ArrayList<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Object, Integer> constants = new HashMap<>();
+
+        FlatAst encode(List<Stmt> statements) {
+            final int[] roots = new int[statements.size()];
+            for (int i = 0; i < roots.length; i++) {
+                roots[i] = stmt(statements.get(i));
+            }
+
+            final byte[] tokenTypes = new byte[tokenList.size()];
+            final int[] tokenLines = new int[tokenList.size()];
+            final int[] tokenColumns = new int[tokenList.size()];
+            final int[] tokenLexemes = new int[tokenList.size()];
+            for (int i = 0; i < tokenTypes.length; i++) {
+                final Token token = tokenList.get(i);
+                tokenTypes[i] = (byte)token.type.ordinal();
+                tokenLines[i] = token.line;
+                tokenColumns[i] = token.column;
+                tokenLexemes[i] = string(token.lexeme);
+            }
+
+            final String[] stringPool = new String[strings.size()];
+            strings.forEach((string, index) -> stringPool[index] = string);
+            final Object[] constantPool = new Object[constants.size()];
+            constants.forEach((constant, index) -> constantPool[index] = constant);
+
+            return new FlatAst(Arrays.copyOf(nodes, size), roots, tokenTypes, tokenLines, tokenColumns,
+                tokenLexemes, stringPool, constantPool);
+        }
+
+        private int node(int kind, int... fields) {
+            if (size + fields.length + 1 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, Math.max(size + fields.length + 1, nodes.length * 2));
+            }
+
+            final int index = size;
+            nodes[size++] = kind;
+            System.arraycopy(fields, 0, nodes, size, fields.length);
+            size += fields.length;
+            return index;
+        }
+
+        private int expr(Expr expr) {
+            return expr == null ? -1 : expr.accept(this);
+        }
+
+        private int stmt(Stmt stmt) {
+            return stmt == null ? -1 : stmt.accept(this);
+        }
+
+        private int token(Token token) {
+            if (token == null) return -1;
+            return tokens.computeIfAbsent(token, key -> {
+                tokenList.add(key);
+                return tokenList.size() - 1;
+            });
+        }
+
+        private int string(String string) {
+            if (string == null) return -1;
+            return strings.computeIfAbsent(string, key -> strings.size());
+        }
+
+        private int constant(Object value) {
+            return constants.computeIfAbsent(value, key -> constants.size());
+        }
+
+        private static int flag(boolean value) {
+            return value ? 1 : 0;
+        }
+
+        private int[] list(List<?> items, int... suffix) {
+            final int[] fields = new int[items.size() + 1 + suffix.length];
+            fields[0] = items.size();
+            for (int i = 0; i < items.size(); i++) {
+                final Object item = items.get(i);
+                if (item instanceof Expr expr) fields[i + 1] = expr(expr);
+                else if (item instanceof Stmt stmt) fields[i + 1] = stmt(stmt);
+                else fields[i + 1] = token((Token)item);
+            }
+            System.arraycopy(suffix, 0, fields, items.size() + 1, suffix.length);
+            return fields;
+        }
+
+        private static int[] concat(int[]... parts) {
+            int length = 0;
+            for (final int[] part : parts) length += part.length;
+
+            final int[] fields = new int[length];
+            int at = 0;
+            for (final int[] part : parts) {
+                System.arraycopy(part, 0, fields, at, part.length);
+                at += part.length;
+            }
+            return fields;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            final int value = expr(expr.value);
+            return node(ASSIGN, token(expr.name), value, expr.depth, expr.slot);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            final int left = expr(expr.left);
+            final int right = expr(expr.right);
+            return node(BINARY, left, token(expr.operator), right,
+                expr.leftType.ordinal(), expr.rightType.ordinal());
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            final int callee = expr(expr.callee);
+            final int[] arguments = list(expr.arguments);
+            return node(CALL, concat(new int[] { callee, token(expr.paren) }, arguments));
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            final int object = expr(expr.object);
+            return node(GET, object, token(expr.name));
+        }
+
+        @Override
+        public Integer visitFunctionExpr(Expr.Function expr) {
+            final int[] params = list(expr.params);
+            final int[] body = list(expr.body, flag(expr.isGenerator), expr.slots);
+            return node(FUNCTION, concat(params, body));
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return node(GROUPING, expr(expr.expression));
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return node(LITERAL, constant(expr.value));
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            final int left = expr(expr.left);
+            final int right = expr(expr.right);
+            return node(LOGICAL, left, token(expr.operator), right);
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            final int object = expr(expr.object);
+            final int value = expr(expr.value);
+            return node(SET, object, token(expr.name), value);
+        }
+
+        @Override
+        public Integer visitSuperExpr(Expr.Super expr) {
+            return node(SUPER, token(expr.keyword), token(expr.method), expr.depth);
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            return node(THIS, token(expr.keyword), expr.depth);
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            final int right = expr(expr.right);
+            return node(UNARY, token(expr.operator), right, expr.rightType.ordinal());
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return node(VARIABLE, token(expr.name), expr.depth, expr.slot);
+        }
+
+        @Override
+        public Integer visitTernaryExpr(Expr.Ternary expr) {
+            final int condition = expr(expr.condition);
+            final int ifTrue = expr(expr.ifTrue);
+            final int ifFalse = expr(expr.ifFalse);
+            return node(TERNARY, condition, ifTrue, ifFalse);
+        }
+
+        @Override
+        public Integer visitYieldExpr(Expr.Yield expr) {
+            final int value = expr(expr.value);
+            return node(YIELD, token(expr.keyword), value);
+        }
+
+        @Override
+        public Integer visitBreakStmt(Stmt.Break stmt) {
+            return node(BREAK_STMT, token(stmt.token));
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            return node(BLOCK_STMT, concat(new int[] { stmt.slots }, list(stmt.statements)));
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            final int superclass = expr(stmt.superclass);
+            final int[] methods = list(stmt.methods);
+            return node(CLASS_STMT, concat(new int[] { token(stmt.name), superclass, stmt.slot }, methods));
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            return node(EXPRESSION_STMT, expr(stmt.expression));
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            final int function = expr(stmt.function);
+            return node(FUNCTION_STMT, token(stmt.name), function, stmt.slot);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            final int condition = expr(stmt.condition);
+            final int thenBranch = stmt(stmt.thenBranch);
+            final int elseBranch = stmt(stmt.elseBranch);
+            return node(IF_STMT, condition, thenBranch, elseBranch);
+        }
+
+        @Override
+        public Integer visitImportStmt(Stmt.Import stmt) {
+            return node(IMPORT_STMT, token(stmt.keyword), token(stmt.path));
+        }
+
+        @Override
+        public Integer visitMethodStmt(Stmt.Method stmt) {
+            final int function = expr(stmt.function);
+            return node(METHOD_STMT, token(stmt.name), function, flag(stmt.isClass));
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            return node(PRINT_STMT, expr(stmt.value));
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            final int value = expr(stmt.value);
+            return node(RETURN_STMT, token(stmt.keyword), value, flag(stmt.isTailCall));
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            final int initializer = expr(stmt.initializer);
+            return node(VAR_STMT, token(stmt.name), initializer, stmt.slot);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            final int condition = expr(stmt.condition);
+            final int body = stmt(stmt.body);
+            return node(WHILE_STMT, token(stmt.keyword), condition, body);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package linewelder.lox;
+
+// What TypeInference can prove about the value of an expression.
+enum InferredType {
+    NUMBER,
+    STRING,
+    UNKNOWN;
+
+    InferredType join(InferredType other) {
+        return this == other ? this : UNKNOWN;
+    }
+}
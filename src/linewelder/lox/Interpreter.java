@@ -5,49 +5,121 @@ import java.util.*;
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private static class Break extends RuntimeException {}
 
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private static final Map<String, LoxCallable> natives = Map.of(
+        "clock", new NativeFunction(0, (interpreter, arguments) ->
+            (double)System.currentTimeMillis() / 1000.0),
+        "spawn", new NativeFunction(1, (interpreter, arguments) ->
+            interpreter.spawn(arguments[0])),
+        "join", new NativeFunction(1, (interpreter, arguments) -> {
+            if (!(arguments[0] instanceof LoxTask task)) {
+                throw new NativeError("Can only join tasks.");
+            }
+
+            return task.join();
+        }));
+
+    final Environment globals;
+    private final Limits limits;
+    private final boolean limited;
+    private final boolean specialize;
+    private final LoxGenerator.Coroutine coroutine;
+    Profiler profiler = null;
+
+    private Environment environment;
+    private Budget budget;
+    private final List<LoxTask> tasks = new ArrayList<>();
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+        this(Limits.NONE, false);
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
-            }
+    // With specialize set, arithmetic on operands that TypeInference found
+    // to be numbers skips the generic type checks and boxing.
+    Interpreter(Limits limits, boolean specialize) {
+        this.globals = new Environment();
+        this.limits = limits;
+        this.limited = !limits.isUnlimited();
+        this.specialize = specialize;
+        this.coroutine = null;
+        this.environment = globals;
+        this.budget = new Budget(limits);
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+        natives.forEach(globals::define);
     }
 
-    void interpret(List<Stmt> statements) {
+    Interpreter(Interpreter parent, LoxGenerator.Coroutine coroutine) {
+        this.globals = parent.globals;
+        this.limits = parent.limits;
+        this.limited = parent.limited;
+        this.specialize = parent.specialize;
+        this.coroutine = coroutine;
+        this.environment = globals;
+        this.budget = parent.budget;
+    }
+
+    boolean isInstrumented() {
+        return limited || profiler != null;
+    }
+
+    void interpret(Program program) {
+        budget = new Budget(limits);
+
         try {
-            for (final Stmt statement : statements) {
+            for (final Stmt statement : program.statements) {
                 execute(statement);
             }
+            joinTasks();
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
+            awaitTasks();
+        }
+    }
+
+    private LoxTask spawn(Object callee) {
+        if (!(callee instanceof LoxCallable function) || function.arity() != 0) {
+            throw new NativeError("Can only spawn functions without parameters.");
+        }
+
+        final LoxTask task = new LoxTask(this, function);
+        tasks.add(task);
+        return task;
+    }
+
+    void joinTasks() {
+        try {
+            for (final LoxTask task : tasks) {
+                if (!task.isJoined()) task.join();
+            }
+        } finally {
+            awaitTasks();
         }
     }
 
+    void awaitTasks() {
+        for (final LoxTask task : tasks) {
+            task.await();
+        }
+        tasks.clear();
+    }
+
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
     private void execute(Stmt stmt) {
-        stmt.accept(this);
-    }
+        if (Metrics.enabled) Metrics.statementsExecuted.increment();
+        if (limited) budget.statements.increment();
+        if (profiler == null) {
+            stmt.accept(this);
+            return;
+        }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+        profiler.enterStatement(stmt);
+        try {
+            stmt.accept(this);
+        } finally {
+            profiler.exitStatement();
+        }
     }
 
     void executeBlock(List<Stmt> statements, Environment environment) {
@@ -70,7 +142,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        executeBlock(stmt.statements, new Environment(environment, stmt.slots));
         return null;
     }
 
@@ -85,11 +157,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        if (stmt.slot < 0) {
+            environment.define(stmt.name.lexeme, null);
+        } else {
+            environment.set(stmt.slot, null);
+        }
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            environment.set(0, superclass);
         }
 
         final Map<String, LoxFunction> methods = new HashMap<>();
@@ -110,7 +186,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         final LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass)superclass, methods, classMethods);
-        environment.assign(stmt.name, klass);
+        if (stmt.slot < 0) {
+            environment.assign(stmt.name, klass);
+        } else {
+            environment.set(stmt.slot, klass);
+        }
         return null;
     }
 
@@ -123,7 +203,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
         final LoxFunction function = new LoxFunction(stmt.name, stmt.function, environment);
-        environment.define(stmt.name.lexeme, function);
+        if (stmt.slot < 0) {
+            environment.define(stmt.name.lexeme, function);
+        } else {
+            environment.set(stmt.slot, function);
+        }
         return null;
     }
 
@@ -138,6 +222,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        return null;
+    }
+
     @Override
     public Void visitMethodStmt(Stmt.Method stmt) {
         return null;
@@ -152,6 +241,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.isTailCall) {
+            final Expr.Call call = (Expr.Call)stmt.value;
+            final Object callee = evaluate(call.callee);
+            if (callee instanceof LoxFunction function) {
+                final Object[] arguments = new Object[call.arguments.size()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = evaluate(call.arguments.get(i));
+                }
+
+                checkArity(function, arguments.length, call.paren);
+                if (limited) checkBudget(call.paren);
+                if (Metrics.enabled) Metrics.calls.increment();
+                throw new TailCall(function, arguments);
+            }
+
+            throw new Return(call(callee, call));
+        }
+
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
         throw new Return(value);
@@ -159,10 +266,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        if (stmt.initializer == null) {
-            environment.define(stmt.name.lexeme);
+        if (stmt.slot < 0) {
+            if (stmt.initializer == null) {
+                environment.define(stmt.name.lexeme);
+            } else {
+                environment.define(stmt.name.lexeme, evaluate(stmt.initializer));
+            }
         } else {
-            environment.define(stmt.name.lexeme, evaluate(stmt.initializer));
+            final Object value = stmt.initializer == null ? Environment.UNINITIALIZED : evaluate(stmt.initializer);
+            environment.set(stmt.slot, value);
         }
         return null;
     }
@@ -172,6 +284,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         try {
             while (isTruthy(evaluate(stmt.condition))) {
                 execute(stmt.body);
+                if (limited) checkBudget(stmt.keyword);
             }
         } catch (Break ignored) {}
 
@@ -182,9 +295,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitAssignExpr(Expr.Assign expr) {
         final Object value = evaluate(expr.value);
 
-        final Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth >= 0) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             globals.assign(expr.name, value);
         }
@@ -194,6 +306,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (specialize && isSpecialized(expr)) return specializedBinary(expr);
+
         final Object left = evaluate(expr.left);
         final Object right = evaluate(expr.right);
 
@@ -239,34 +353,214 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         };
     }
 
+    private static boolean isSpecialized(Expr.Binary expr) {
+        final boolean numbers = expr.leftType == InferredType.NUMBER && expr.rightType == InferredType.NUMBER;
+        return switch (expr.operator.type) {
+            case PLUS -> numbers || expr.leftType == InferredType.STRING || expr.rightType == InferredType.STRING;
+            case MINUS, SLASH, STAR, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> numbers;
+            default -> false;
+        };
+    }
+
+    // The operand types were proven by TypeInference, so the checks of the
+    // generic path can't fail here and numbers stay unboxed until the
+    // outermost operation. Division by zero is still checked.
+    private Object specializedBinary(Expr.Binary expr) {
+        if (expr.leftType != InferredType.NUMBER || expr.rightType != InferredType.NUMBER) {
+            return stringify(evaluate(expr.left)) + stringify(evaluate(expr.right));
+        }
+
+        return switch (expr.operator.type) {
+            case GREATER -> number(expr.left) > number(expr.right);
+            case GREATER_EQUAL -> number(expr.left) >= number(expr.right);
+            case LESS -> number(expr.left) < number(expr.right);
+            case LESS_EQUAL -> number(expr.left) <= number(expr.right);
+            default -> arithmetic(expr);
+        };
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        final double left = number(expr.left);
+        final double right = number(expr.right);
+        return switch (expr.operator.type) {
+            case MINUS -> left - right;
+            case PLUS -> left + right;
+            case SLASH -> {
+                if (right == 0) {
+                    throw new RuntimeError(expr.operator, "Division by zero.");
+                }
+                yield left / right;
+            }
+            case STAR -> left * right;
+            default -> throw new IllegalStateException("Not arithmetic: " + expr.operator.type);
+        };
+    }
+
+    // Evaluates an expression that is known to produce a number.
+    private double number(Expr expr) {
+        if (expr instanceof Expr.Literal literal) return (double)literal.value;
+        if (expr instanceof Expr.Grouping grouping) return number(grouping.expression);
+        if (expr instanceof Expr.Binary binary && binary.leftType == InferredType.NUMBER &&
+            binary.rightType == InferredType.NUMBER) {
+            return arithmetic(binary);
+        }
+        if (expr instanceof Expr.Unary unary && unary.rightType == InferredType.NUMBER) {
+            return -number(unary.right);
+        }
+
+        return (double)evaluate(expr);
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        final Object callee = evaluate(expr.callee);
+        if (expr.callee instanceof Expr.Get get) {
+            final Object object = evaluate(get.object);
+            if (object instanceof LoxInstance instance) {
+                final LoxFunction method = instance.lookUpMethod(get.name);
+                if (method != null) return callMethod(method, instance, expr);
+            }
+
+            return call(getProperty(object, get.name), expr);
+        }
+
+        return call(evaluate(expr.callee), expr);
+    }
+
+    private Object callMethod(LoxFunction method, LoxInstance instance, Expr.Call expr) {
+        if (Metrics.enabled) Metrics.calls.increment();
+        if (!limited) return invokeMethod(method, instance, expr);
+
+        checkCall(method, expr.paren);
+        try {
+            return invokeMethod(method, instance, expr);
+        } finally {
+            budget.callDepth.decrementAndGet();
+        }
+    }
+
+    private Object invokeMethod(LoxFunction method, LoxInstance instance, Expr.Call expr) {
+        final List<Expr> arguments = expr.arguments;
+        final int arity = method.arity();
+        final Environment frame = method.methodFrame(instance);
+        for (int i = 0; i < arguments.size(); i++) {
+            final Object value = evaluate(arguments.get(i));
+            if (i < arity) method.setParameter(frame, i, value);
+        }
+
+        checkArity(method, arguments.size(), expr.paren);
+        return method.invoke(this, frame);
+    }
+
+    private Object call(Object callee, Expr.Call expr) {
+        if (Metrics.enabled) Metrics.calls.increment();
         if (!(callee instanceof LoxCallable function)) {
             throw new RuntimeError(expr.paren,
                 "Can only call functions and classes.");
         }
 
-        final List<Object> arguments = new ArrayList<>();
-        for (final Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        try {
+            if (!limited) return invoke(function, expr);
+
+            checkCall(function, expr.paren);
+            try {
+                return invoke(function, expr);
+            } finally {
+                budget.callDepth.decrementAndGet();
+            }
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object invoke(LoxCallable function, Expr.Call expr) {
+        final List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0 -> {
+                checkArity(function, 0, expr.paren);
+                return function.call0(this);
+            }
+            case 1 -> {
+                final Object a = evaluate(arguments.get(0));
+                checkArity(function, 1, expr.paren);
+                return function.call1(this, a);
+            }
+            case 2 -> {
+                final Object a = evaluate(arguments.get(0));
+                final Object b = evaluate(arguments.get(1));
+                checkArity(function, 2, expr.paren);
+                return function.call2(this, a, b);
+            }
+            case 3 -> {
+                final Object a = evaluate(arguments.get(0));
+                final Object b = evaluate(arguments.get(1));
+                final Object c = evaluate(arguments.get(2));
+                checkArity(function, 3, expr.paren);
+                return function.call3(this, a, b, c);
+            }
+            case 4 -> {
+                final Object a = evaluate(arguments.get(0));
+                final Object b = evaluate(arguments.get(1));
+                final Object c = evaluate(arguments.get(2));
+                final Object d = evaluate(arguments.get(3));
+                checkArity(function, 4, expr.paren);
+                return function.call4(this, a, b, c, d);
+            }
+            default -> {
+                final Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i));
+                }
+
+                checkArity(function, values.length, expr.paren);
+                return function.call(this, values);
+            }
         }
+    }
 
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren,
-                "Expected " + function.arity() + " arguments, but got " + arguments.size() + ".");
+    // Enters the call on success; the caller leaves it by decrementing the
+    // budget's call depth.
+    private void checkCall(LoxCallable function, Token paren) {
+        checkBudget(paren);
+        final int depth = budget.callDepth.incrementAndGet();
+        if (limits.maxCallDepth > 0 && depth > limits.maxCallDepth) {
+            budget.callDepth.decrementAndGet();
+            throw new RuntimeError(paren, "Call depth limit exceeded.");
+        }
+        if (function instanceof LoxClass && limits.maxInstances > 0 &&
+            budget.instances.incrementAndGet() > limits.maxInstances) {
+            budget.callDepth.decrementAndGet();
+            throw new RuntimeError(paren, "Instance limit exceeded.");
+        }
+    }
+
+    private void checkBudget(Token token) {
+        if (limits.maxStatements > 0 && budget.statements.sum() > limits.maxStatements) {
+            throw new RuntimeError(token, "Statement limit exceeded.");
+        }
+        if (limits.maxWallTimeMillis > 0 && System.nanoTime() - budget.deadline > 0) {
+            throw new RuntimeError(token, "Time limit exceeded.");
+        }
+    }
+
+    private void checkArity(LoxCallable function, int count, Token paren) {
+        final int arity = function.arity();
+        if (count != arity) {
+            throw new RuntimeError(paren,
+                "Expected " + arity + " arguments, but got " + count + ".");
         }
-        return function.call(this, arguments);
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        final Object object = evaluate(expr.object);
-        if (object instanceof LoxInstance) {
-            return ((LoxInstance)object).get(expr.name);
+        return getProperty(evaluate(expr.object), expr.name);
+    }
+
+    private Object getProperty(Object object, Token name) {
+        if (object instanceof LoxInstance instance) {
+            return instance.get(name);
         }
 
-        throw new RuntimeError(expr.name,
+        throw new RuntimeError(name,
             "Only instances have properties.");
     }
 
@@ -311,9 +605,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        final int distance = locals.get(expr);
-        final LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
-        final LoxInstance object = (LoxInstance)environment.getAt(distance - 1, "this");
+        final int distance = expr.depth;
+        final LoxClass superclass = (LoxClass)environment.getAt(distance, 0);
+        final LoxInstance object = (LoxInstance)environment.getAt(distance - 1, 0);
 
         final LoxFunction method = superclass.findMethod(expr.method.lexeme);
         if (method == null) {
@@ -325,11 +619,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return environment.getAt(expr.depth, 0);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (specialize && expr.rightType == InferredType.NUMBER && expr.operator.type == TokenType.MINUS) {
+            return -number(expr.right);
+        }
+
         final Object right = evaluate(expr.right);
         return switch (expr.operator.type) {
             case BANG -> !isTruthy(right);
@@ -343,16 +641,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        if (expr.depth >= 0) {
+            return environment.getAt(expr.depth, expr.slot, expr.name);
+        } else {
+            return globals.get(expr.name);
+        }
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        final Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
-        } else {
-            return globals.get(name);
+    @Override
+    public Object visitYieldExpr(Expr.Yield expr) {
+        if (coroutine == null) {
+            throw new RuntimeError(expr.keyword, "Can only yield inside a generator.");
         }
+
+        Object value = null;
+        if (expr.value != null) value = evaluate(expr.value);
+        return coroutine.yield(value);
     }
 
     @Override
@@ -0,0 +1,145 @@
+package linewelder.lox;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// Compiles hot numeric functions to JVM classes in the background. A
+// compiled function gives up when it hits something the Java code can't
+// express (like a division by zero); since it has no side effects, the
+// caller then simply runs the same call in the interpreter.
+class Jit {
+    static final int THRESHOLD = 1000;
+    static boolean enabled = true;
+
+    private static class Worker {
+        static final ExecutorService compiler = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "lox-jit");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Per declaration, so every closure and bound method made from it
+    // shares one count and one compiled class.
+    static final class State {
+        // Only a hint: lost updates from racing threads just delay
+        // compilation a little.
+        private int invocations = 0;
+        private final AtomicBoolean submitted = new AtomicBoolean();
+        volatile Function<double[], Object> compiled = null;
+
+        // True for exactly one call, once the declaration has got hot.
+        boolean becameHot() {
+            if (submitted.getPlain() || ++invocations < THRESHOLD) return false;
+            return submitted.compareAndSet(false, true);
+        }
+    }
+
+    private static int classes = 0;
+
+    private Jit() {}
+
+    static void submit(LoxFunction function) {
+        if (!enabled) return;
+        Worker.compiler.execute(() -> function.declaration().jit.compiled = compile(function));
+    }
+
+    private static Function<double[], Object> compile(LoxFunction function) {
+        final String className = "LoxCompiled" + classes++;
+        final String source;
+        try {
+            source = JitTranslator.translate(className, function.name(), function.declaration());
+        } catch (JitTranslator.Unsupported unsupported) {
+            return null;
+        }
+
+        final Map<String, byte[]> classFiles = compile(className, source);
+        if (classFiles == null) return null;
+
+        final ClassLoader loader = new ClassLoader(Jit.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                final byte[] bytes = classFiles.get(name);
+                if (bytes == null) throw new ClassNotFoundException(name);
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        return instantiate(loader, className);
+    }
+
+    // Classes that jloxc compiled ahead of time and put on the class path.
+    // The launcher registers them before the program starts running.
+    static void preload(Expr.Function declaration, String className) {
+        final Function<double[], Object> compiled = instantiate(Jit.class.getClassLoader(), className);
+        if (compiled == null) return;
+        declaration.jit.submitted.set(true);
+        declaration.jit.compiled = compiled;
+    }
+
+    static Map<String, byte[]> compile(String className, String source) {
+        final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            // Running on a JRE. Only the compiler thread gets here, so
+            // the warning is printed once.
+            if (enabled) {
+                System.err.println("No Java compiler available; functions will not be compiled.");
+                enabled = false;
+            }
+            return null;
+        }
+
+        final Map<String, byte[]> classFiles = new HashMap<>();
+        final JavaFileManager files = new ForwardingJavaFileManager<>(
+                javac.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("memory:///" + name + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            @Override
+                            public void close() {
+                                classFiles.put(name, toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+
+        final JavaFileObject unit = new SimpleJavaFileObject(
+                URI.create("memory:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final Writer errors = new StringWriter();
+        final List<String> options = List.of("-g:none", "-proc:none");
+        if (!javac.getTask(errors, files, null, options, null, List.of(unit)).call()) {
+            return null;
+        }
+
+        return classFiles;
+    }
+
+    private static Function<double[], Object> instantiate(ClassLoader loader, String className) {
+        try {
+            @SuppressWarnings("unchecked")
+            final Function<double[], Object> compiled = (Function<double[], Object>)
+                loader.loadClass(className).getConstructor().newInstance();
+            if (Metrics.enabled) Metrics.functionsCompiled.increment();
+            return compiled;
+        } catch (ReflectiveOperationException | ClassCastException error) {
+            return null;
+        }
+    }
+}
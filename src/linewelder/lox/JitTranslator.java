@@ -0,0 +1,408 @@
+package linewelder.lox;
+
+import java.util.*;
+
+// Translates a function that only computes with numbers into Java source.
+// Every variable is an unboxed double and conditions are Java booleans.
+// Anything else makes the function unsupported and it stays interpreted.
+//
+// The compiled class returns the function's number, null when the body
+// runs off its end (the implicit nil), or itself when the call must be
+// redone in the interpreter. A recursive call whose value is used can't
+// produce nil, so running off the end there redoes the outermost call.
+class JitTranslator implements Expr.Visitor<JitTranslator.Code>, Stmt.Visitor<Boolean> {
+    static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    record Code(String text, boolean isBoolean) {}
+
+    private final Token name;
+    private final Expr.Function function;
+    private final StringBuilder out = new StringBuilder();
+    private final Deque<Map<String, String>> scopes = new ArrayDeque<>();
+    private int locals = 0;
+    private int loops = 0;
+    private int indent = 0;
+
+    private JitTranslator(Token name, Expr.Function function) {
+        this.name = name;
+        this.function = function;
+    }
+
+    static String translate(String className, Token name, Expr.Function function) {
+        return new JitTranslator(name, function).translate(className);
+    }
+
+    private String translate(String className) {
+        final Map<String, String> parameters = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < function.params.size(); i++) {
+            parameters.put(function.params.get(i).lexeme, "p" + i);
+            names.add("p" + i);
+        }
+        scopes.push(parameters);
+
+        final StringBuilder signature = new StringBuilder();
+        final StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                signature.append(", ");
+                arguments.append(", ");
+            }
+            signature.append("double ").append(names.get(i));
+            arguments.append("arguments[").append(i).append("]");
+        }
+
+        indent = 3;
+        scopes.push(new HashMap<>());
+        boolean completes = true;
+        for (final Stmt statement : function.body) {
+            completes = statement.accept(this);
+            if (!completes) break;
+        }
+        if (completes) line("throw END;");
+
+        return "public final class " + className + " implements java.util.function.Function<double[], Object> {\n" +
+            "    private static final class Deopt extends RuntimeException {\n" +
+            "        Deopt() {\n" +
+            "            super(null, null, false, false);\n" +
+            "        }\n" +
+            "    }\n" +
+            "\n" +
+            "    private static final Deopt DEOPT = new Deopt();\n" +
+            "    private static final Deopt END = new Deopt();\n" +
+            "\n" +
+            "    @Override\n" +
+            "    public Object apply(double[] arguments) {\n" +
+            "        try {\n" +
+            "            return call(" + arguments + ");\n" +
+            "        } catch (Deopt deopt) {\n" +
+            "            return deopt == END ? null : this;\n" +
+            "        }\n" +
+            "    }\n" +
+            "\n" +
+            "    private static double value(" + signature + ") {\n" +
+            "        try {\n" +
+            "            return call(" + String.join(", ", names) + ");\n" +
+            "        } catch (Deopt deopt) {\n" +
+            "            throw DEOPT;\n" +
+            "        }\n" +
+            "    }\n" +
+            "\n" +
+            "    private static double divide(double left, double right) {\n" +
+            "        if (right == 0) throw DEOPT;\n" +
+            "        return left / right;\n" +
+            "    }\n" +
+            "\n" +
+            "    private static double call(" + signature + ") {\n" +
+            "        top: while (true) {\n" +
+            out +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+    }
+
+    private void line(String text) {
+        out.append("    ".repeat(indent)).append(text).append('\n');
+    }
+
+    private String lookUp(Token name) {
+        for (final Map<String, String> scope : scopes) {
+            final String local = scope.get(name.lexeme);
+            if (local != null) return local;
+        }
+
+        throw new Unsupported();
+    }
+
+    private Code number(Expr expr) {
+        final Code code = expr.accept(this);
+        if (code.isBoolean) throw new Unsupported();
+        return code;
+    }
+
+    private Code condition(Expr expr) {
+        final Code code = expr.accept(this);
+        if (!code.isBoolean) throw new Unsupported();
+        return code;
+    }
+
+    private boolean isSelfCall(Expr expr) {
+        return expr instanceof Expr.Call call &&
+            call.callee instanceof Expr.Variable callee &&
+            callee.depth < 0 && callee.name.lexeme.equals(name.lexeme);
+    }
+
+    private boolean block(List<Stmt> statements) {
+        scopes.push(new HashMap<>());
+        indent++;
+        boolean completes = true;
+        for (final Stmt statement : statements) {
+            completes = statement.accept(this);
+            if (!completes) break;
+        }
+        indent--;
+        scopes.pop();
+        return completes;
+    }
+
+    private boolean nested(Stmt statement) {
+        if (statement instanceof Stmt.Block block) return block(block.statements);
+
+        scopes.push(new HashMap<>());
+        indent++;
+        final boolean completes = statement.accept(this);
+        indent--;
+        scopes.pop();
+        return completes;
+    }
+
+    @Override
+    public Boolean visitBlockStmt(Stmt.Block stmt) {
+        line("{");
+        final boolean completes = block(stmt.statements);
+        line("}");
+        return completes;
+    }
+
+    @Override
+    public Boolean visitBreakStmt(Stmt.Break stmt) {
+        if (loops == 0) throw new Unsupported();
+        line("break;");
+        return false;
+    }
+
+    @Override
+    public Boolean visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.Assign assign) {
+            line(lookUp(assign.name) + " = " + number(assign.value).text + ";");
+        } else if (isSelfCall(stmt.expression)) {
+            line("try {");
+            indent++;
+            line(call((Expr.Call)stmt.expression, "call") + ";");
+            indent--;
+            line("} catch (Deopt deopt) {");
+            line("    if (deopt != END) throw deopt;");
+            line("}");
+        } else {
+            throw new Unsupported();
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean visitIfStmt(Stmt.If stmt) {
+        line("if (" + condition(stmt.condition).text + ") {");
+        final boolean thenCompletes = nested(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            line("}");
+            return true;
+        }
+
+        line("} else {");
+        final boolean elseCompletes = nested(stmt.elseBranch);
+        line("}");
+        return thenCompletes || elseCompletes;
+    }
+
+    @Override
+    public Boolean visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) throw new Unsupported();
+
+        if (stmt.isTailCall && isSelfCall(stmt.value)) {
+            final List<Expr> arguments = ((Expr.Call)stmt.value).arguments;
+            if (arguments.size() != function.params.size()) throw new Unsupported();
+
+            final List<String> temporaries = new ArrayList<>();
+            for (final Expr argument : arguments) {
+                final String temporary = "t" + locals++;
+                line("final double " + temporary + " = " + number(argument).text + ";");
+                temporaries.add(temporary);
+            }
+            for (int i = 0; i < temporaries.size(); i++) {
+                line("p" + i + " = " + temporaries.get(i) + ";");
+            }
+            line("continue top;");
+            return false;
+        }
+
+        line("return " + number(stmt.value).text + ";");
+        return false;
+    }
+
+    @Override
+    public Boolean visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) throw new Unsupported();
+
+        final String initializer = number(stmt.initializer).text;
+        final String local = "v" + locals++;
+        scopes.peek().put(stmt.name.lexeme, local);
+        line("double " + local + " = " + initializer + ";");
+        return true;
+    }
+
+    @Override
+    public Boolean visitWhileStmt(Stmt.While stmt) {
+        line("while (" + condition(stmt.condition).text + ") {");
+        loops++;
+        nested(stmt.body);
+        loops--;
+        line("}");
+        return true;
+    }
+
+    @Override
+    public Boolean visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Boolean visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Boolean visitImportStmt(Stmt.Import stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Boolean visitMethodStmt(Stmt.Method stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Boolean visitPrintStmt(Stmt.Print stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitAssignExpr(Expr.Assign expr) {
+        return new Code("(" + lookUp(expr.name) + " = " + number(expr.value).text + ")", false);
+    }
+
+    @Override
+    public Code visitBinaryExpr(Expr.Binary expr) {
+        final Code left = expr.left.accept(this);
+        final Code right = expr.right.accept(this);
+        if (left.isBoolean != right.isBoolean) throw new Unsupported();
+
+        if (left.isBoolean) {
+            return switch (expr.operator.type) {
+                case EQUAL_EQUAL -> new Code("(" + left.text + " == " + right.text + ")", true);
+                case BANG_EQUAL -> new Code("(" + left.text + " != " + right.text + ")", true);
+                default -> throw new Unsupported();
+            };
+        }
+
+        return switch (expr.operator.type) {
+            case MINUS -> new Code("(" + left.text + " - " + right.text + ")", false);
+            case PLUS -> new Code("(" + left.text + " + " + right.text + ")", false);
+            case STAR -> new Code("(" + left.text + " * " + right.text + ")", false);
+            case SLASH -> new Code("divide(" + left.text + ", " + right.text + ")", false);
+            case GREATER -> new Code("(" + left.text + " > " + right.text + ")", true);
+            case GREATER_EQUAL -> new Code("(" + left.text + " >= " + right.text + ")", true);
+            case LESS -> new Code("(" + left.text + " < " + right.text + ")", true);
+            case LESS_EQUAL -> new Code("(" + left.text + " <= " + right.text + ")", true);
+            case EQUAL_EQUAL -> new Code("(Double.doubleToLongBits(" + left.text +
+                ") == Double.doubleToLongBits(" + right.text + "))", true);
+            case BANG_EQUAL -> new Code("(Double.doubleToLongBits(" + left.text +
+                ") != Double.doubleToLongBits(" + right.text + "))", true);
+            default -> throw new Unsupported();
+        };
+    }
+
+    @Override
+    public Code visitCallExpr(Expr.Call expr) {
+        return new Code(call(expr, "value"), false);
+    }
+
+    private String call(Expr.Call expr, String method) {
+        if (!isSelfCall(expr) || expr.arguments.size() != function.params.size()) {
+            throw new Unsupported();
+        }
+
+        final StringBuilder text = new StringBuilder(method).append("(");
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            if (i > 0) text.append(", ");
+            text.append(number(expr.arguments.get(i)).text);
+        }
+        return text.append(")").toString();
+    }
+
+    @Override
+    public Code visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Code visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double value) return new Code(Double.toString(value), false);
+        if (expr.value instanceof Boolean value) return new Code(value.toString(), true);
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitLogicalExpr(Expr.Logical expr) {
+        final String left = condition(expr.left).text;
+        final String right = condition(expr.right).text;
+        final String operator = expr.operator.type == TokenType.OR ? " || " : " && ";
+        return new Code("(" + left + operator + right + ")", true);
+    }
+
+    @Override
+    public Code visitUnaryExpr(Expr.Unary expr) {
+        return switch (expr.operator.type) {
+            case BANG -> new Code("(!" + condition(expr.right).text + ")", true);
+            case MINUS -> new Code("(-" + number(expr.right).text + ")", false);
+            default -> throw new Unsupported();
+        };
+    }
+
+    @Override
+    public Code visitVariableExpr(Expr.Variable expr) {
+        return new Code(lookUp(expr.name), false);
+    }
+
+    @Override
+    public Code visitTernaryExpr(Expr.Ternary expr) {
+        final String condition = condition(expr.condition).text;
+        final Code ifTrue = expr.ifTrue.accept(this);
+        final Code ifFalse = expr.ifFalse.accept(this);
+        if (ifTrue.isBoolean != ifFalse.isBoolean) throw new Unsupported();
+        return new Code("(" + condition + " ? " + ifTrue.text + " : " + ifFalse.text + ")", ifTrue.isBoolean);
+    }
+
+    @Override
+    public Code visitFunctionExpr(Expr.Function expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitGetExpr(Expr.Get expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitSetExpr(Expr.Set expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitSuperExpr(Expr.Super expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitThisExpr(Expr.This expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Code visitYieldExpr(Expr.Yield expr) {
+        throw new Unsupported();
+    }
+}
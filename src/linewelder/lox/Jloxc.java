@@ -0,0 +1,118 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.stream.Stream;
+
+public class Jloxc {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: jloxc script [output.jar]");
+            System.exit(64);
+        }
+
+        final Path script = Paths.get(args[0]);
+        final Path output = args.length == 2 ? Paths.get(args[1]) : jarName(script);
+
+        final List<ModuleLoader.Module> modules = new ModuleLoader().loadScript(script);
+        boolean hadError = false;
+        for (final ModuleLoader.Module module : modules) {
+            hadError |= Lox.report(module.diagnostics);
+        }
+        if (hadError) System.exit(65);
+
+        final Program program = new Program(modules);
+        final Map<String, byte[]> classFiles = new TreeMap<>();
+        final Properties compiledFunctions = compileFunctions(program, classFiles);
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Launcher.class.getName());
+
+        try (JarOutputStream jar = new JarOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(output)), manifest)) {
+            copyRuntime(jar);
+
+            for (final Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                jar.putNextEntry(new JarEntry(classFile.getKey().replace('.', '/') + ".class"));
+                jar.write(classFile.getValue());
+                jar.closeEntry();
+            }
+
+            jar.putNextEntry(new JarEntry(Launcher.PROGRAM));
+            program.write(jar);
+            jar.closeEntry();
+
+            jar.putNextEntry(new JarEntry(Launcher.COMPILED_FUNCTIONS));
+            compiledFunctions.store(jar, null);
+            jar.closeEntry();
+        }
+
+        System.out.println("Wrote " + output + " (" + classFiles.size() + " compiled classes).");
+    }
+
+    private static Path jarName(Path script) {
+        final String name = script.getFileName().toString();
+        final int extension = name.lastIndexOf('.');
+        return script.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + ".jar");
+    }
+
+    // Maps the index of each compiled top-level function declaration to
+    // the name of its class. The program itself stays as it was parsed.
+    private static Properties compileFunctions(Program program, Map<String, byte[]> classFiles) {
+        final Properties compiledFunctions = new Properties();
+        int count = 0;
+        for (int i = 0; i < program.statements.size(); i++) {
+            if (!(program.statements.get(i) instanceof Stmt.Function stmt) || stmt.function.isGenerator) continue;
+
+            final String className = "LoxCompiled" + count++;
+            try {
+                final String source = JitTranslator.translate(className, stmt.name, stmt.function);
+                final Map<String, byte[]> compiled = Jit.compile(className, source);
+                if (compiled == null) continue;
+
+                classFiles.putAll(compiled);
+                compiledFunctions.setProperty(Integer.toString(i), className);
+            } catch (JitTranslator.Unsupported ignored) {}
+        }
+
+        return compiledFunctions;
+    }
+
+    private static void copyRuntime(JarOutputStream jar) throws IOException {
+        final Path location;
+        try {
+            location = Paths.get(Jloxc.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException error) {
+            throw new IOException(error);
+        }
+
+        if (Files.isDirectory(location)) {
+            final Path root = location.resolve("linewelder");
+            try (Stream<Path> files = Files.walk(root)) {
+                for (final Path file : (Iterable<Path>)files.filter(Files::isRegularFile)::iterator) {
+                    final String name = location.relativize(file).toString().replace(File.separatorChar, '/');
+                    jar.putNextEntry(new JarEntry(name));
+                    Files.copy(file, jar);
+                    jar.closeEntry();
+                }
+            }
+            return;
+        }
+
+        try (JarFile runtime = new JarFile(location.toFile())) {
+            for (final JarEntry entry : Collections.list(runtime.entries())) {
+                if (entry.isDirectory() || !entry.getName().startsWith("linewelder/")) continue;
+
+                jar.putNextEntry(new JarEntry(entry.getName()));
+                try (InputStream input = runtime.getInputStream(entry)) {
+                    input.transferTo(jar);
+                }
+                jar.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.util.*;
+
+public class Launcher {
+    static final String PROGRAM = "program.ast";
+    static final String COMPILED_FUNCTIONS = "compiled.properties";
+
+    public static void main(String[] args) throws IOException {
+        final ClassLoader loader = Launcher.class.getClassLoader();
+        final InputStream stream = loader.getResourceAsStream(PROGRAM);
+        if (stream == null) {
+            System.err.println("No compiled program in this archive.");
+            System.exit(66);
+        }
+
+        final Program program = Program.read(stream);
+        final Properties compiledFunctions = new Properties();
+        try (InputStream input = loader.getResourceAsStream(COMPILED_FUNCTIONS)) {
+            if (input != null) compiledFunctions.load(input);
+        }
+
+        for (final String index : compiledFunctions.stringPropertyNames()) {
+            if (program.statements.get(Integer.parseInt(index)) instanceof Stmt.Function stmt) {
+                Jit.preload(stmt.function, compiledFunctions.getProperty(index));
+            }
+        }
+
+        Lox.runCompiled(program);
+    }
+}
@@ -0,0 +1,21 @@
+package linewelder.lox;
+
+class Limits {
+    static final Limits NONE = new Limits(0, 0, 0, 0);
+
+    final long maxStatements;
+    final int maxCallDepth;
+    final long maxInstances;
+    final long maxWallTimeMillis;
+
+    Limits(long maxStatements, int maxCallDepth, long maxInstances, long maxWallTimeMillis) {
+        this.maxStatements = maxStatements;
+        this.maxCallDepth = maxCallDepth;
+        this.maxInstances = maxInstances;
+        this.maxWallTimeMillis = maxWallTimeMillis;
+    }
+
+    boolean isUnlimited() {
+        return maxStatements == 0 && maxCallDepth == 0 && maxInstances == 0 && maxWallTimeMillis == 0;
+    }
+}
@@ -0,0 +1,173 @@
+package linewelder.lox;
+
+import java.util.List;
+
+class Lines implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    private static final Lines instance = new Lines();
+
+    private Lines() {}
+
+    static int of(Stmt stmt) {
+        return stmt.accept(instance);
+    }
+
+    static int of(Expr expr) {
+        return expr.accept(instance);
+    }
+
+    private int first(List<Stmt> statements) {
+        for (final Stmt statement : statements) {
+            final int line = of(statement);
+            if (line != 0) return line;
+        }
+
+        return 0;
+    }
+
+    private int first(Expr... exprs) {
+        for (final Expr expr : exprs) {
+            final int line = of(expr);
+            if (line != 0) return line;
+        }
+
+        return 0;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        return expr.operator.line;
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        final int line = of(expr.callee);
+        return line != 0 ? line : expr.paren.line;
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitFunctionExpr(Expr.Function expr) {
+        if (!expr.params.isEmpty()) return expr.params.get(0).line;
+        return first(expr.body);
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return of(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return 0;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        return expr.operator.line;
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+        return expr.keyword.line;
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+        return expr.keyword.line;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        return expr.operator.line;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitTernaryExpr(Expr.Ternary expr) {
+        return first(expr.condition, expr.ifTrue, expr.ifFalse);
+    }
+
+    @Override
+    public Integer visitYieldExpr(Expr.Yield expr) {
+        return expr.keyword.line;
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+        return stmt.token.line;
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        return first(stmt.statements);
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+        return of(stmt.expression);
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+        final int line = of(stmt.condition);
+        return line != 0 ? line : of(stmt.thenBranch);
+    }
+
+    @Override
+    public Integer visitImportStmt(Stmt.Import stmt) {
+        return stmt.keyword.line;
+    }
+
+    @Override
+    public Integer visitMethodStmt(Stmt.Method stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return of(stmt.value);
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+        return stmt.keyword.line;
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+        return stmt.keyword.line;
+    }
+}
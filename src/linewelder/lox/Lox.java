@@ -1,83 +1,321 @@
 package linewelder.lox;
 
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.List;
+import java.util.*;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    private static Interpreter interpreter;
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    private static String profileOutput = null;
+    private static ModuleCache moduleCache = null;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        final List<String> scripts = new ArrayList<>();
+        boolean check = false;
+        Path moduleCacheDirectory = null;
+        long maxStatements = 0;
+        int maxCallDepth = 0;
+        long maxInstances = 0;
+        long maxWallTimeMillis = 0;
+        boolean specialize = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--profile") && i + 1 < args.length) {
+                    profileOutput = args[++i];
+                } else if (args[i].equals("--module-cache") && i + 1 < args.length) {
+                    moduleCacheDirectory = Paths.get(args[++i]);
+                } else if (args[i].equals("--check")) {
+                    check = true;
+                } else if (args[i].equals("--no-jit")) {
+                    Jit.enabled = false;
+                } else if (args[i].equals("--specialize")) {
+                    specialize = true;
+                } else if (args[i].equals("--metrics")) {
+                    Metrics.register();
+                } else if (args[i].equals("--max-statements") && i + 1 < args.length) {
+                    maxStatements = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--max-call-depth") && i + 1 < args.length) {
+                    maxCallDepth = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-instances") && i + 1 < args.length) {
+                    maxInstances = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--timeout") && i + 1 < args.length) {
+                    maxWallTimeMillis = Long.parseLong(args[++i]);
+                } else if (!args[i].startsWith("--")) {
+                    scripts.add(args[i]);
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException error) {
+            usage();
+        }
+
+        if (check) {
+            if (scripts.isEmpty()) usage();
+            System.exit(Checker.check(scripts.stream().map(Paths::get).toList()));
+        }
+        if (scripts.size() > 1) usage();
+
+        moduleCache = new ModuleCache(ModuleCache.DEFAULT_CAPACITY, moduleCacheDirectory);
+        final Limits limits = new Limits(maxStatements, maxCallDepth, maxInstances, maxWallTimeMillis);
+        interpreter = new Interpreter(limits, specialize);
+
+        if (profileOutput != null) {
+            interpreter.profiler = new Profiler();
+        }
+
+        final String path = scripts.isEmpty() ? null : scripts.get(0);
+        runOnMainThread(() -> {
+            if (path != null) {
+                runFile(path);
+            } else {
+                runPrompt();
+            }
+        });
+    }
+
+    interface Task {
+        void run() throws IOException;
+    }
+
+    // Failures escaping the script thread are rethrown or reported here, on
+    // the real main thread, so they decide the exit status.
+    //
+    // The script runs on a virtual thread, which makes generator handoffs
+    // cheap, except when profiling: the JVM only counts allocated bytes
+    // per platform thread.
+    static void runOnMainThread(Task task) throws IOException {
+        final Throwable[] failure = new Throwable[1];
+        final Thread.Builder builder = interpreter.profiler != null ? Thread.ofPlatform() : Thread.ofVirtual();
+        final Thread main = builder.name("lox-main").start(() -> {
+            try {
+                task.run();
+            } catch (Throwable error) {
+                failure[0] = error;
+            }
+        });
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                main.join();
+                break;
+            } catch (InterruptedException error) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (failure[0] == null) return;
+        if (failure[0] instanceof IOException error) throw error;
+        if (failure[0] instanceof StackOverflowError) {
+            System.err.println("Stack overflow.");
         } else {
-            runPrompt();
+            failure[0].printStackTrace();
         }
+        System.exit(70);
+    }
+
+    static void runCompiled(Program program) throws IOException {
+        interpreter = new Interpreter();
+        runOnMainThread(() -> {
+            if (Metrics.enabled) Metrics.scriptsRun.increment();
+            interpreter.interpret(program);
+            if (hadRuntimeError) System.exit(70);
+        });
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--profile output] [--metrics] [--module-cache directory]");
+        System.out.println("            [--no-jit] [--specialize] [--max-statements count]");
+        System.out.println("            [--max-call-depth depth] [--max-instances count]");
+        System.out.println("            [--timeout milliseconds] [script]");
+        System.out.println("       jlox --check (script | directory)...");
+        System.exit(64);
     }
 
     private static void runFile(String path) throws IOException {
-        final byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()), false);
+        final Events.Script event = new Events.Script();
+        event.begin();
+        if (Metrics.enabled) Metrics.scriptsRun.increment();
+        final ModuleLoader loader = new ModuleLoader(moduleCache);
+        run(loader.loadScript(Paths.get(path)));
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.commit();
+        }
+
+        writeProfile();
 
         if (hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
+    private record Chunk(TokenBuffer tokens, int offset) {}
+
+    private static final Set<TokenType> BINARY_OPERATORS = EnumSet.of(
+        TokenType.DOT, TokenType.COMMA, TokenType.MINUS, TokenType.PLUS, TokenType.SLASH,
+        TokenType.STAR, TokenType.QUESTION, TokenType.COLON, TokenType.BANG,
+        TokenType.BANG_EQUAL, TokenType.EQUAL, TokenType.EQUAL_EQUAL, TokenType.GREATER,
+        TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL, TokenType.AND, TokenType.OR);
+
+    // Every line is scanned once, as it is read. When a statement is
+    // complete, the tokens of its lines are appended into one buffer over
+    // their joined text, so a long multi-line entry is never rescanned.
+    // Only lines inside a string or comment that is still open are scanned
+    // again, together with the line that closes it.
+    //
+    // An entry continues while brackets are open, after a trailing operator
+    // and inside an open string or comment. At the end of input, whatever
+    // is pending is run, so its errors point at the last line typed.
     private static void runPrompt() throws IOException {
         final InputStreamReader input = new InputStreamReader(System.in);
         final BufferedReader reader = new BufferedReader(input);
 
+        final Diagnostics diagnostics = new Diagnostics();
+        final Resolver resolver = new Resolver(diagnostics);
+        final ModuleLoader loader = new ModuleLoader(moduleCache);
+        final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        final List<Chunk> chunks = new ArrayList<>();
+        int line = 1;
+        int scannedUpTo = 0;
+        int unscannedLine = 1;
+        int depth = 0;
+        TokenType last = null;
         for (;;) {
-            System.out.print("> ");
-            final String line = reader.readLine();
-            if (line == null) break;
-            run(line, true);
+            System.out.print(pending.size() == 0 ? "> " : "... ");
+            final String text = reader.readLine();
+            if (text == null && pending.size() == 0) break;
+
+            if (text != null) {
+                final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                final boolean rescan = scannedUpTo < pending.size();
+                pending.write(bytes);
+                final ByteBuffer source = rescan
+                    ? ByteBuffer.wrap(pending.toByteArray()).slice(scannedUpTo, pending.size() - scannedUpTo)
+                    : ByteBuffer.wrap(bytes);
+                pending.write('\n');
+                line++;
+
+                final Diagnostics errors = diagnostics.fork();
+                final Scanner scanner = new Scanner(source, unscannedLine, errors);
+                final TokenBuffer tokens = scanner.scanTokens();
+                if (scanner.isUnterminated()) continue;
+
+                chunks.add(new Chunk(tokens, scannedUpTo));
+                diagnostics.addAll(errors);
+                scannedUpTo = pending.size();
+                unscannedLine = line;
+                for (int i = 0; i < tokens.size() - 1; i++) {
+                    switch (tokens.type(i)) {
+                        case LEFT_PAREN, LEFT_BRACE -> depth++;
+                        case RIGHT_PAREN, RIGHT_BRACE -> depth--;
+                        default -> {}
+                    }
+                    last = tokens.type(i);
+                }
+
+                if (!diagnostics.hadError() && (depth > 0 || BINARY_OPERATORS.contains(last))) continue;
+            } else if (scannedUpTo < pending.size()) {
+                final ByteBuffer source = ByteBuffer.wrap(pending.toByteArray())
+                    .slice(scannedUpTo, pending.size() - scannedUpTo - 1);
+                chunks.add(new Chunk(new Scanner(source, unscannedLine, diagnostics).scanTokens(), scannedUpTo));
+            }
+
+            if (!report(diagnostics)) {
+                runLine(join(pending.toByteArray(), chunks), diagnostics, resolver, loader);
+            }
+
+            pending.reset();
+            chunks.clear();
+            scannedUpTo = 0;
+            unscannedLine = line;
+            depth = 0;
+            last = null;
+            diagnostics.clear();
             hadError = false;
+            if (text == null) break;
         }
+
+        writeProfile();
     }
 
-    private static void run(String source, boolean replPrompt) {
-        final Scanner scanner = new Scanner(source);
-        final List<Token> tokens = scanner.scanTokens();
+    // Drops the EOF token of every chunk but the last.
+    private static TokenBuffer join(byte[] source, List<Chunk> chunks) {
+        int count = 1;
+        for (final Chunk chunk : chunks) {
+            count += chunk.tokens.size() - 1;
+        }
 
-        final Parser parser = new Parser(tokens);
-        final List<Stmt> statements = parser.parse(replPrompt);
+        final TokenBuffer tokens = new TokenBuffer(ByteBuffer.wrap(source), count);
+        for (int i = 0; i < chunks.size(); i++) {
+            final Chunk chunk = chunks.get(i);
+            final boolean last = i == chunks.size() - 1;
+            tokens.append(chunk.tokens, last ? chunk.tokens.size() : chunk.tokens.size() - 1, chunk.offset);
+        }
 
-        if (hadError) return;
+        return tokens;
+    }
 
-        final Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
+    private static void writeProfile() throws IOException {
+        if (interpreter.profiler == null) return;
 
-        if (hadError) return;
+        interpreter.profiler.writeCollapsedStacks(profileOutput);
+        interpreter.profiler.printSummary(System.err);
+    }
 
-        interpreter.interpret(statements);
+    private static void runLine(TokenBuffer tokens, Diagnostics diagnostics,
+                                Resolver resolver, ModuleLoader loader) {
+        if (Metrics.enabled) Metrics.scriptsRun.increment();
+        final Parser parser = new Parser(tokens, diagnostics);
+        final List<Stmt> statements = parser.parse(true);
+        if (report(diagnostics)) return;
+
+        resolver.resolve(statements);
+        if (report(diagnostics)) return;
+        new TypeInference().infer(statements);
+
+        run(loader.loadImports(statements, diagnostics));
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void run(List<ModuleLoader.Module> modules) {
+        for (final ModuleLoader.Module module : modules) {
+            report(module.diagnostics);
+        }
+
+        if (hadError) return;
+
+        interpreter.interpret(new Program(modules));
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    static boolean report(Diagnostics diagnostics) {
+        if (diagnostics.hadError()) {
+            final StringBuilder errors = new StringBuilder();
+            for (final Diagnostics.Error error : diagnostics.errors()) {
+                errors.append(error).append(System.lineSeparator());
+            }
+            System.err.print(errors);
         }
+
+        if (diagnostics.hadError()) hadError = true;
+        return diagnostics.hadError();
     }
 
     static void runtimeError(RuntimeError error) {
         System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
         hadRuntimeError = true;
-    }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+        if (Metrics.enabled) Metrics.runtimeErrors.increment();
+        final Events.ScriptError event = new Events.ScriptError();
+        if (event.shouldCommit()) {
+            event.message = error.getMessage();
+            event.line = error.token.line;
+            event.commit();
+        }
     }
 }
\ No newline at end of file
@@ -6,12 +6,16 @@ public class LoxClass extends LoxInstance implements LoxCallable {
     final String name;
     final LoxClass superclass;
     private final Map<String, LoxFunction> methods;
+    private final LoxFunction initializer;
+    private final int arity;
 
     private LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
         super(null);
         this.superclass = superclass;
         this.name = name;
         this.methods = methods;
+        this.initializer = findMethod("init");
+        this.arity = initializer == null ? 0 : initializer.arity();
     }
 
     LoxClass(String name, LoxClass superclass,
@@ -24,6 +28,8 @@ public class LoxClass extends LoxInstance implements LoxCallable {
         this.superclass = superclass;
         this.name = name;
         this.methods = methods;
+        this.initializer = findMethod("init");
+        this.arity = initializer == null ? 0 : initializer.arity();
     }
 
     LoxFunction findMethod(String name) {
@@ -45,17 +51,87 @@ public class LoxClass extends LoxInstance implements LoxCallable {
 
     @Override
     public int arity() {
-        final LoxFunction initializer = findMethod("init");
-        if (initializer == null) return 0;
-        return initializer.arity();
+        return arity;
+    }
+
+    private LoxInstance instantiate() {
+        if (Metrics.enabled) Metrics.instancesCreated.increment();
+        return new LoxInstance(this);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        final LoxInstance instance = instantiate();
+        if (initializer != null) {
+            final Environment frame = initializer.methodFrame(instance);
+            for (int i = 0; i < arguments.length; i++) {
+                initializer.setParameter(frame, i, arguments[i]);
+            }
+            initializer.invoke(interpreter, frame);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        final LoxInstance instance = instantiate();
+        if (initializer != null) {
+            initializer.invoke(interpreter, initializer.methodFrame(instance));
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        final LoxInstance instance = instantiate();
+        if (initializer != null) {
+            final Environment frame = initializer.methodFrame(instance);
+            initializer.setParameter(frame, 0, a);
+            initializer.invoke(interpreter, frame);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        final LoxInstance instance = instantiate();
+        if (initializer != null) {
+            final Environment frame = initializer.methodFrame(instance);
+            initializer.setParameter(frame, 0, a);
+            initializer.setParameter(frame, 1, b);
+            initializer.invoke(interpreter, frame);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        final LoxInstance instance = instantiate();
+        if (initializer != null) {
+            final Environment frame = initializer.methodFrame(instance);
+            initializer.setParameter(frame, 0, a);
+            initializer.setParameter(frame, 1, b);
+            initializer.setParameter(frame, 2, c);
+            initializer.invoke(interpreter, frame);
+        }
+
+        return instance;
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        final LoxInstance instance = new LoxInstance(this);
-        final LoxFunction initializer = findMethod("init");
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        final LoxInstance instance = instantiate();
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            final Environment frame = initializer.methodFrame(instance);
+            initializer.setParameter(frame, 0, a);
+            initializer.setParameter(frame, 1, b);
+            initializer.setParameter(frame, 2, c);
+            initializer.setParameter(frame, 3, d);
+            initializer.invoke(interpreter, frame);
         }
 
         return instance;
@@ -1,8 +1,15 @@
 package linewelder.lox;
 
-import java.util.List;
+import jdk.jfr.EventType;
+
+import java.util.function.Function;
 
 public class LoxFunction implements LoxCallable {
+    private static final Object INTERPRET = new Object();
+    // Checked before allocating a SlowCall, so calls cost nothing extra
+    // unless a recording is listening for it.
+    private static final EventType SLOW_CALL = EventType.getEventType(Events.SlowCall.class);
+
     private final Token name;
     private final Expr.Function function;
     private final Environment closure;
@@ -25,9 +32,25 @@ public class LoxFunction implements LoxCallable {
     }
 
     LoxFunction bind(LoxInstance instance) {
-        final Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(name, function, environment, isInitializer);
+        return new LoxFunction(name, function, receiver(instance), isInitializer);
+    }
+
+    private Environment receiver(LoxInstance instance) {
+        final Environment environment = new Environment(closure, 1);
+        environment.set(0, instance);
+        return environment;
+    }
+
+    Environment methodFrame(LoxInstance instance) {
+        return new Environment(receiver(instance), function.slots);
+    }
+
+    void setParameter(Environment frame, int index, Object value) {
+        frame.set(index, value);
+    }
+
+    Object invoke(Interpreter interpreter, Environment frame) {
+        return execute(interpreter, frame);
     }
 
     @Override
@@ -36,21 +59,191 @@ public class LoxFunction implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        final Environment environment = new Environment(closure);
-        for (int i = 0; i < function.params.size(); i++) {
-            environment.define(function.params.get(i).lexeme, arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, arguments);
+            if (result != INTERPRET) return result;
+        }
+
+        return execute(interpreter, bindArguments(arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, NO_ARGUMENTS);
+            if (result != INTERPRET) return result;
+        }
+
+        return execute(interpreter, new Environment(closure, function.slots));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, new Object[] { a });
+            if (result != INTERPRET) return result;
+        }
+
+        final Environment environment = new Environment(closure, function.slots);
+        environment.set(0, a);
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, new Object[] { a, b });
+            if (result != INTERPRET) return result;
+        }
+
+        final Environment environment = new Environment(closure, function.slots);
+        environment.set(0, a);
+        environment.set(1, b);
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, new Object[] { a, b, c });
+            if (result != INTERPRET) return result;
+        }
+
+        final Environment environment = new Environment(closure, function.slots);
+        environment.set(0, a);
+        environment.set(1, b);
+        environment.set(2, c);
+        return execute(interpreter, environment);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        final Function<double[], Object> compiled = function.jit.compiled;
+        if (compiled != null) {
+            final Object result = runCompiled(interpreter, compiled, new Object[] { a, b, c, d });
+            if (result != INTERPRET) return result;
         }
 
-        Object result = null;
+        final Environment environment = new Environment(closure, function.slots);
+        environment.set(0, a);
+        environment.set(1, b);
+        environment.set(2, c);
+        environment.set(3, d);
+        return execute(interpreter, environment);
+    }
+
+    // Returns INTERPRET when the call has to run in the interpreter
+    // instead; null is the compiled code's nil.
+    private Object runCompiled(Interpreter interpreter, Function<double[], Object> compiled,
+                               Object[] arguments) {
+        if (interpreter.isInstrumented() || !isTopLevel()) return INTERPRET;
+
+        final double[] values = new double[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            if (!(arguments[i] instanceof Double value)) return INTERPRET;
+            values[i] = value;
+        }
+
+        final Object result = compiled.apply(values);
+        return result == compiled ? INTERPRET : result;
+    }
+
+    // Methods of top-level classes close over the globals too, but only a
+    // function declared at the top level can call itself by its name.
+    private boolean isCompilable() {
+        return !isInitializer && !function.isGenerator && isTopLevel();
+    }
+
+    private boolean isTopLevel() {
+        return name != null && closure.enclosing == null && closure.isBoundTo(name.lexeme, this);
+    }
+
+    private Environment bindArguments(Object[] arguments) {
+        final Environment environment = new Environment(closure, function.slots);
+        for (int i = 0; i < arguments.length; i++) {
+            environment.set(i, arguments[i]);
+        }
+
+        return environment;
+    }
+
+    private Object execute(Interpreter interpreter, Environment environment) {
+        if (function.isGenerator) return new LoxGenerator(interpreter, this, environment);
+        if (function.jit.becameHot() && isCompilable()) Jit.submit(this);
+
+        final Profiler profiler = interpreter.profiler;
+        final Events.SlowCall event = SLOW_CALL.isEnabled() ? new Events.SlowCall() : null;
+        LoxFunction current = this;
+        if (profiler != null) profiler.enterFunction(current);
+        if (event != null) event.begin();
+        try {
+            while (true) {
+                try {
+                    interpreter.executeBlock(current.function.body, environment);
+                    return current.result(environment, null);
+                } catch (Return returnValue) {
+                    return current.result(environment, returnValue.value);
+                } catch (TailCall tailCall) {
+                    current = tailCall.function;
+                    environment = current.bindArguments(tailCall.arguments);
+                    if (current.function.isGenerator) {
+                        return new LoxGenerator(interpreter, current, environment);
+                    }
+
+                    if (profiler != null) {
+                        profiler.exitFunction();
+                        profiler.enterFunction(current);
+                    }
+                }
+            }
+        } finally {
+            if (profiler != null) profiler.exitFunction();
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.function = profileName();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    Object executeGenerator(Interpreter interpreter, Environment environment) {
         try {
             interpreter.executeBlock(function.body, environment);
+            return null;
         } catch (Return returnValue) {
-            result = returnValue.value;
+            return returnValue.value;
+        } catch (TailCall tailCall) {
+            return tailCall.function.call(interpreter, tailCall.arguments);
         }
+    }
+
+    private Object result(Environment environment, Object value) {
+        if (isInitializer) return environment.getAt(1, 0);
+        return value;
+    }
+
+    Token name() {
+        return name;
+    }
+
+    Expr.Function declaration() {
+        return function;
+    }
 
-        if (isInitializer) result = closure.getAt(0, "this");
-        return result;
+    String profileName() {
+        if (name != null) {
+            return name.lexeme + ":" + name.line;
+        } else {
+            return "<anonymous fn>:" + Lines.of(function);
+        }
     }
 
     @Override
@@ -0,0 +1,191 @@
+package linewelder.lox;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.concurrent.SynchronousQueue;
+
+class LoxGenerator extends LoxInstance {
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private static class Signal {
+        final Object value;
+        final boolean done;
+        final Throwable error;
+
+        Signal(Object value, boolean done, Throwable error) {
+            this.value = value;
+            this.done = done;
+            this.error = error;
+        }
+    }
+
+    private static final Signal DONE = new Signal(null, true, null);
+
+    private static class Cancelled extends RuntimeException {
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Runs the generator body on its own virtual thread. Only one side runs
+    // at a time: each transfer hands control over and blocks until it returns.
+    static class Coroutine {
+        private final Interpreter parent;
+        private final LoxFunction function;
+        private final Environment environment;
+        private final SynchronousQueue<Signal> toBody = new SynchronousQueue<>();
+        private final SynchronousQueue<Signal> fromBody = new SynchronousQueue<>();
+        private volatile Thread thread = null;
+        private boolean finished = false;
+
+        Coroutine(Interpreter parent, LoxFunction function, Environment environment) {
+            this.parent = parent;
+            this.function = function;
+            this.environment = environment;
+        }
+
+        Signal resume(Object sent) {
+            if (finished) return DONE;
+
+            if (thread == null) {
+                thread = Thread.ofVirtual().name("lox-generator").start(this::run);
+            } else {
+                transfer(toBody, new Signal(sent, false, null));
+            }
+
+            final Signal signal = receive(fromBody);
+            if (signal.done) finished = true;
+            if (signal.error instanceof RuntimeException error) throw error;
+            if (signal.error instanceof Error error) throw error;
+            return signal;
+        }
+
+        Object yield(Object value) {
+            try {
+                fromBody.put(new Signal(value, false, null));
+                return toBody.take().value;
+            } catch (InterruptedException error) {
+                throw new Cancelled();
+            }
+        }
+
+        private void run() {
+            final Interpreter interpreter = new Interpreter(parent, this);
+            Signal result;
+            try {
+                final Object value = function.executeGenerator(interpreter, environment);
+                interpreter.joinTasks();
+                result = new Signal(value, true, null);
+            } catch (Cancelled cancelled) {
+                return;
+            } catch (Throwable error) {
+                result = new Signal(null, true, error);
+                interpreter.awaitTasks();
+            }
+
+            transfer(fromBody, result);
+        }
+
+        private void cancel() {
+            final Thread thread = this.thread;
+            if (thread != null) thread.interrupt();
+        }
+
+        private static void transfer(SynchronousQueue<Signal> queue, Signal signal) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(signal);
+                    break;
+                } catch (InterruptedException error) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        private static Signal receive(SynchronousQueue<Signal> queue) {
+            boolean interrupted = false;
+            Signal signal;
+            while (true) {
+                try {
+                    signal = queue.take();
+                    break;
+                } catch (InterruptedException error) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) Thread.currentThread().interrupt();
+            return signal;
+        }
+    }
+
+    private final Coroutine coroutine;
+    private Signal lookahead = null;
+
+    // Bound once, so looking a method up in a loop doesn't allocate.
+    private final NativeFunction hasNext = new NativeFunction(0, (interpreter, arguments) -> {
+        if (lookahead == null) lookahead = resume(null);
+        return !lookahead.done;
+    });
+
+    private final NativeFunction next = new NativeFunction(0, (interpreter, arguments) -> advance(null).value);
+
+    private final NativeFunction send = new NativeFunction(1, (interpreter, arguments) -> {
+        // The body has already moved past the yield the value was meant
+        // for, so it can't be delivered.
+        if (lookahead != null) {
+            throw new NativeError("Can't send to a generator after hasNext() until next() is called.");
+        }
+
+        return advance(arguments[0]).value;
+    });
+
+    LoxGenerator(Interpreter interpreter, LoxFunction function, Environment environment) {
+        super(null);
+        this.coroutine = new Coroutine(interpreter, function, environment);
+        cleaner.register(this, coroutine::cancel);
+    }
+
+    private Signal resume(Object sent) {
+        try {
+            return coroutine.resume(sent);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    private Signal advance(Object sent) {
+        if (lookahead != null) {
+            final Signal signal = lookahead;
+            lookahead = null;
+            return signal;
+        }
+
+        return resume(sent);
+    }
+
+    @Override
+    Object get(Token name) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        return switch (name.lexeme) {
+            case "hasNext" -> hasNext;
+            case "next" -> next;
+            case "send" -> send;
+            default -> throw new RuntimeError(name,
+                "Undefined property '" + name.lexeme + "'.");
+        };
+    }
+
+    @Override
+    public void set(Token name, Object value) {
+        throw new RuntimeError(name, "Can't set properties on a generator.");
+    }
+
+    @Override
+    public String toString() {
+        return "<generator>";
+    }
+}
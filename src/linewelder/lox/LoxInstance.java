@@ -1,19 +1,31 @@
 package linewelder.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
 
+// Fields are stored by position in an array, with their names kept in a
+// Shape shared by all instances that assigned the same fields in the same
+// order. Tasks may read and write the same instance: reads take no lock,
+// so a new shape is only published after the values array that fits it,
+// and slots are accessed with release and acquire semantics. Writes lock
+// the instance so that adding a field can't lose a concurrent update.
 public class LoxInstance {
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(Object[].class);
+
     final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private volatile Shape shape = Shape.EMPTY;
+    private volatile Object[] values = NO_VALUES;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
-        }
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        final int index = shape.indexOf(name.lexeme);
+        if (index >= 0) return VALUE.getAcquire(values, index);
 
         if (klass == null) {
             return null;
@@ -26,8 +38,27 @@ public class LoxInstance {
             "Undefined property '" + name.lexeme + "'.");
     }
 
-    public void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    LoxFunction lookUpMethod(Token name) {
+        if (klass == null) return null;
+        if (shape.indexOf(name.lexeme) >= 0) return null;
+
+        final LoxFunction method = klass.findMethod(name.lexeme);
+        if (method != null && Metrics.enabled) Metrics.propertyLookups.increment();
+        return method;
+    }
+
+    public synchronized void set(Token name, Object value) {
+        final Shape shape = this.shape;
+        final int index = shape.indexOf(name.lexeme);
+        if (index >= 0) {
+            VALUE.setRelease(values, index, value);
+            return;
+        }
+
+        final Object[] values = Arrays.copyOf(this.values, shape.size() + 1);
+        values[shape.size()] = value;
+        this.values = values;
+        this.shape = shape.with(name.lexeme);
     }
 
     @Override
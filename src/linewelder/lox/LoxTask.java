@@ -0,0 +1,54 @@
+package linewelder.lox;
+
+class LoxTask {
+    private final Thread thread;
+    private Object result = null;
+    private Throwable error = null;
+    private volatile boolean joined = false;
+
+    LoxTask(Interpreter parent, LoxCallable function) {
+        thread = Thread.ofVirtual().name("lox-task").start(() -> run(parent, function));
+    }
+
+    private void run(Interpreter parent, LoxCallable function) {
+        final Interpreter interpreter = new Interpreter(parent, null);
+        try {
+            result = function.call0(interpreter);
+            interpreter.joinTasks();
+        } catch (Throwable error) {
+            this.error = error;
+            interpreter.awaitTasks();
+        }
+    }
+
+    boolean isJoined() {
+        return joined;
+    }
+
+    void await() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException error) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    Object join() {
+        await();
+        joined = true;
+        if (error instanceof RuntimeException failure) throw failure;
+        if (error instanceof Error failure) throw failure;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
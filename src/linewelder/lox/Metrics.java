@@ -0,0 +1,101 @@
+package linewelder.lox;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters are LongAdders: tasks, generators and --check workers bump
+// them from many threads, and an adder keeps that cheap on the hot path
+// by spreading contended updates over cells that are only summed when
+// JMX reads an attribute. Nothing is counted unless --metrics registered
+// the bean, so callers check enabled before incrementing.
+// The bean describes its attributes itself instead of relying on
+// reflection over an MBean interface, which keeps it usable in a
+// native image without extra configuration.
+class Metrics implements DynamicMBean {
+    // Set once while parsing the command line, before any script runs.
+    static boolean enabled = false;
+
+    static final LongAdder scriptsRun = new LongAdder();
+    static final LongAdder statementsExecuted = new LongAdder();
+    static final LongAdder calls = new LongAdder();
+    static final LongAdder environmentsAllocated = new LongAdder();
+    static final LongAdder instancesCreated = new LongAdder();
+    static final LongAdder propertyLookups = new LongAdder();
+    static final LongAdder runtimeErrors = new LongAdder();
+    static final LongAdder moduleCacheHits = new LongAdder();
+    static final LongAdder moduleCacheMisses = new LongAdder();
+    static final LongAdder functionsCompiled = new LongAdder();
+
+    private static final String[] ATTRIBUTES = {
+        "ScriptsRun", "StatementsExecuted", "Calls", "EnvironmentsAllocated", "InstancesCreated",
+        "PropertyLookups", "RuntimeErrors", "ModuleCacheHits", "ModuleCacheMisses", "FunctionsCompiled",
+    };
+
+    private Metrics() {}
+
+    static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new Metrics(), new ObjectName("linewelder.lox:type=Interpreter"));
+            enabled = true;
+        } catch (JMException error) {
+            System.err.println("Could not register metrics: " + error.getMessage());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        return switch (attribute) {
+            case "ScriptsRun" -> scriptsRun.sum();
+            case "StatementsExecuted" -> statementsExecuted.sum();
+            case "Calls" -> calls.sum();
+            case "EnvironmentsAllocated" -> environmentsAllocated.sum();
+            case "InstancesCreated" -> instancesCreated.sum();
+            case "PropertyLookups" -> propertyLookups.sum();
+            case "RuntimeErrors" -> runtimeErrors.sum();
+            case "ModuleCacheHits" -> moduleCacheHits.sum();
+            case "ModuleCacheMisses" -> moduleCacheMisses.sum();
+            case "FunctionsCompiled" -> functionsCompiled.sum();
+            default -> throw new AttributeNotFoundException(attribute);
+        };
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (final String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {}
+        }
+
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only.");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(action));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ATTRIBUTES.length];
+        for (int i = 0; i < ATTRIBUTES.length; i++) {
+            attributes[i] = new MBeanAttributeInfo(ATTRIBUTES[i], "long", ATTRIBUTES[i], true, false, false);
+        }
+
+        return new MBeanInfo(Metrics.class.getName(), "Lox interpreter counters.",
+            attributes, null, null, null);
+    }
+}
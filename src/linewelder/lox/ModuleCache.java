@@ -0,0 +1,143 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+class ModuleCache {
+    static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+    private static class Entry {
+        final FlatAst ast;
+        final long size;
+
+        Entry(FlatAst ast) {
+            this.ast = ast;
+            this.size = ast.size();
+        }
+    }
+
+    private final long capacity;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    ModuleCache(long capacity, Path directory) {
+        this.capacity = capacity;
+        this.directory = directory;
+    }
+
+    static String hash(ByteBuffer source) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    // Modules are kept flattened and decoded into a fresh tree on every hit.
+    List<Stmt> get(String hash) {
+        FlatAst ast;
+        synchronized (this) {
+            final Entry entry = entries.get(hash);
+            ast = entry == null ? null : entry.ast;
+        }
+
+        if (ast == null) {
+            ast = readFromDisk(hash);
+            if (ast == null) {
+                if (Metrics.enabled) Metrics.moduleCacheMisses.increment();
+                return null;
+            }
+            remember(hash, ast);
+        }
+
+        final List<Stmt> statements;
+        try {
+            statements = ast.decode();
+        } catch (RuntimeException error) {
+            forget(hash);
+            if (Metrics.enabled) Metrics.moduleCacheMisses.increment();
+            return null;
+        }
+
+        if (Metrics.enabled) Metrics.moduleCacheHits.increment();
+        return statements;
+    }
+
+    void put(String hash, List<Stmt> statements) {
+        final FlatAst ast = FlatAst.encode(statements);
+        remember(hash, ast);
+        writeToDisk(hash, ast);
+    }
+
+    private synchronized void remember(String hash, FlatAst ast) {
+        final Entry entry = new Entry(ast);
+        if (entry.size > capacity) return;
+
+        final Entry previous = entries.put(hash, entry);
+        if (previous != null) this.size -= previous.size;
+        this.size += entry.size;
+
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (this.size > capacity) {
+            this.size -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    // A damaged entry is dropped from memory and disk alike; the module is
+    // then parsed again and put() writes a good copy over it.
+    private void forget(String hash) {
+        synchronized (this) {
+            final Entry entry = entries.remove(hash);
+            if (entry != null) this.size -= entry.size;
+        }
+
+        if (directory == null) return;
+        try {
+            Files.deleteIfExists(file(hash));
+        } catch (IOException ignored) {}
+    }
+
+    private Path file(String hash) {
+        return directory.resolve(hash + ".ast");
+    }
+
+    private FlatAst readFromDisk(String hash) {
+        if (directory == null) return null;
+
+        final Path file = file(hash);
+        if (!Files.exists(file)) return null;
+
+        try (InputStream input = Files.newInputStream(file)) {
+            return FlatAst.read(input, Files.size(file));
+        } catch (IOException | RuntimeException error) {
+            forget(hash);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String hash, FlatAst ast) {
+        if (directory == null) return;
+
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, hash, ".tmp");
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                ast.write(output);
+            }
+            Files.move(temporary, file(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            System.err.println("Could not write module cache: " + error.getMessage());
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {}
+        }
+    }
+}
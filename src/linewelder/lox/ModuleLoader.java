@@ -0,0 +1,154 @@
+package linewelder.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class ModuleLoader {
+    static class Module {
+        final Path path;
+        final List<Stmt> statements;
+        final Diagnostics diagnostics;
+        final Map<Stmt.Import, Path> imports;
+
+        Module(Path path, List<Stmt> statements, Diagnostics diagnostics, Map<Stmt.Import, Path> imports) {
+            this.path = path;
+            this.statements = statements;
+            this.diagnostics = diagnostics;
+            this.imports = imports;
+        }
+    }
+
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final ModuleCache cache;
+    private final ConcurrentMap<Path, ForkJoinTask<Module>> modules = new ConcurrentHashMap<>();
+    private final Set<Path> linked = new HashSet<>();
+
+    ModuleLoader() {
+        this(null);
+    }
+
+    ModuleLoader(ModuleCache cache) {
+        this.cache = cache;
+    }
+
+    List<Module> loadScript(Path path) throws IOException {
+        final ByteBuffer source = read(path);
+        final ForkJoinTask<Module> task = ForkJoinTask.adapt(() -> compile(path, new Diagnostics(), source));
+        modules.put(key(path), task);
+        return link(task.invoke());
+    }
+
+    List<Module> loadImports(List<Stmt> statements, Diagnostics diagnostics) {
+        final Path directory = Paths.get("");
+        return link(new Module(null, statements, diagnostics, startImports(statements, directory)));
+    }
+
+    // Large files are memory-mapped rather than copied onto the heap.
+    static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            final long size = channel.size();
+            if (size >= MAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+            return buffer.flip();
+        }
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private ForkJoinTask<Module> load(Path path) {
+        return modules.computeIfAbsent(key(path), key -> pool.submit(() -> compile(path)));
+    }
+
+    private Module compile(Path path) {
+        final Diagnostics diagnostics = new Diagnostics(path.toString());
+        try {
+            return compile(path, diagnostics, read(path));
+        } catch (IOException error) {
+            return new Module(key(path), null, diagnostics, Map.of());
+        }
+    }
+
+    private Module compile(Path path, Diagnostics diagnostics, ByteBuffer source) {
+        final Path directory = path.getParent() == null ? Paths.get("") : path.getParent();
+
+        final String hash = cache == null ? null : ModuleCache.hash(source);
+        if (cache != null) {
+            final List<Stmt> cached = cache.get(hash);
+            if (cached != null) {
+                return new Module(key(path), cached, diagnostics, startImports(cached, directory));
+            }
+        }
+
+        final Parser parser = new Parser(ParallelScanner.scanTokens(source, diagnostics), diagnostics);
+        final List<Stmt> statements = parser.parse(false);
+        final Map<Stmt.Import, Path> imports = startImports(statements, directory);
+
+        if (!diagnostics.hadError()) {
+            new Resolver(diagnostics).resolve(statements);
+        }
+        if (!diagnostics.hadError()) {
+            new TypeInference().infer(statements);
+        }
+
+        if (cache != null && !diagnostics.hadError()) {
+            cache.put(hash, statements);
+        }
+
+        return new Module(key(path), statements, diagnostics, imports);
+    }
+
+    private Map<Stmt.Import, Path> startImports(List<Stmt> statements, Path directory) {
+        final Map<Stmt.Import, Path> imports = new LinkedHashMap<>();
+        for (final Stmt statement : statements) {
+            if (statement instanceof Stmt.Import stmt) {
+                final Path path = directory.resolve((String)stmt.path.literal).normalize();
+                imports.put(stmt, path);
+                load(path);
+            }
+        }
+
+        return imports;
+    }
+
+    private List<Module> link(Module root) {
+        final List<Module> order = new ArrayList<>();
+        final Set<Path> visited = new HashSet<>(linked);
+        if (root.path != null) visited.add(root.path);
+        link(root, order, visited);
+
+        for (final Module module : order) {
+            if (module.diagnostics.hadError()) return order;
+        }
+
+        for (final Module module : order) {
+            if (module.path != null) linked.add(module.path);
+        }
+        return order;
+    }
+
+    private void link(Module module, List<Module> order, Set<Path> visited) {
+        for (final Map.Entry<Stmt.Import, Path> entry : module.imports.entrySet()) {
+            final Module imported = load(entry.getValue()).join();
+            if (imported.statements == null) {
+                module.diagnostics.error(entry.getKey().path, "Could not read module.");
+                continue;
+            }
+
+            if (visited.add(imported.path)) {
+                link(imported, order, visited);
+            }
+        }
+
+        order.add(module);
+    }
+}
@@ -0,0 +1,7 @@
+package linewelder.lox;
+
+class NativeError extends RuntimeException {
+    NativeError(String message) {
+        super(message);
+    }
+}
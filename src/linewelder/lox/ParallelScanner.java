@@ -0,0 +1,109 @@
+package linewelder.lox;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Scans very large sources in chunks on the fork/join pool. A cheap first
+// pass follows only strings and (nested) comments, the way Scanner does,
+// to find newlines where a chunk can safely end, and counts the lines
+// before each of them so every chunk knows its first line number.
+class ParallelScanner {
+    static final int THRESHOLD = 16 * 1024 * 1024;
+    private static final int MIN_CHUNK = 4 * 1024 * 1024;
+
+    private record Chunk(int start, int end, int line) {}
+
+    private ParallelScanner() {}
+
+    static TokenBuffer scanTokens(ByteBuffer source, Diagnostics diagnostics) {
+        if (source.limit() < THRESHOLD) return new Scanner(source, diagnostics).scanTokens();
+
+        final List<Chunk> chunks = split(source, chunkSize(source.limit()));
+        if (chunks.size() == 1) return new Scanner(source, diagnostics).scanTokens();
+
+        final List<Diagnostics> chunkDiagnostics = new ArrayList<>();
+        final List<ForkJoinTask<TokenBuffer>> tasks = new ArrayList<>();
+        for (final Chunk chunk : chunks) {
+            final Diagnostics errors = diagnostics.fork();
+            final ByteBuffer slice = source.slice(chunk.start, chunk.end - chunk.start);
+            chunkDiagnostics.add(errors);
+            tasks.add(ForkJoinTask.adapt(() -> new Scanner(slice, chunk.line, errors).scanTokens()));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        int count = 0;
+        for (final ForkJoinTask<TokenBuffer> task : tasks) {
+            count += task.join().size();
+        }
+
+        final TokenBuffer tokens = new TokenBuffer(source, count);
+        for (int i = 0; i < tasks.size(); i++) {
+            final TokenBuffer chunkTokens = tasks.get(i).join();
+            final boolean last = i == tasks.size() - 1;
+            tokens.append(chunkTokens, last ? chunkTokens.size() : chunkTokens.size() - 1, chunks.get(i).start);
+            diagnostics.addAll(chunkDiagnostics.get(i));
+        }
+
+        return tokens;
+    }
+
+    private static int chunkSize(int length) {
+        final int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+        return Math.max(MIN_CHUNK, length / chunks);
+    }
+
+    // Mirrors the scanner's handling of strings and comments, but only to
+    // know whether a newline lies outside of them. Everything else can't
+    // span a line, so any such newline is a safe boundary.
+    private static List<Chunk> split(ByteBuffer source, int chunkSize) {
+        final List<Chunk> chunks = new ArrayList<>();
+        final int length = source.limit();
+        int chunkStart = 0;
+        int chunkLine = 1;
+        int line = 1;
+        int depth = 0;
+        boolean inString = false;
+        boolean inLineComment = false;
+
+        int i = 0;
+        while (i < length) {
+            final byte c = source.get(i++);
+            if (c == '\n') {
+                line++;
+                inLineComment = false;
+                if (!inString && depth == 0 && i - chunkStart >= chunkSize && length - i >= chunkSize / 2) {
+                    chunks.add(new Chunk(chunkStart, i, chunkLine));
+                    chunkStart = i;
+                    chunkLine = line;
+                }
+            } else if (inString) {
+                if (c == '"') inString = false;
+            } else if (inLineComment) {
+                // Skip to the end of the line.
+            } else if (depth > 0) {
+                if (c == '*' && i < length && source.get(i) == '/') {
+                    i++;
+                    depth--;
+                } else if (c == '/' && i < length && source.get(i) == '*') {
+                    i++;
+                    depth++;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '/' && i < length) {
+                if (source.get(i) == '/') {
+                    i++;
+                    inLineComment = true;
+                } else if (source.get(i) == '*') {
+                    i++;
+                    depth = 1;
+                }
+            }
+        }
+
+        chunks.add(new Chunk(chunkStart, length, chunkLine));
+        return chunks;
+    }
+}
@@ -5,14 +5,20 @@ import java.util.function.Supplier;
 
 import static linewelder.lox.TokenType.*;
 
+// Recovers from errors in panic mode, as clox does, rather than unwinding
+// with an exception: after an error no more tokens are consumed and no
+// more errors reported, so every rule returns straight away with whatever
+// it has. The enclosing declaration then drops its statement and skips to
+// the next statement boundary.
 class Parser {
-    private static class ParseError extends RuntimeException {}
-
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;
+    private final Diagnostics diagnostics;
     private int current = 0;
+    private boolean panicMode = false;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenBuffer tokens, Diagnostics diagnostics) {
         this.tokens = tokens;
+        this.diagnostics = diagnostics;
     }
 
     List<Stmt> parse(boolean replPrompt) {
@@ -25,22 +31,28 @@ class Parser {
     }
 
     private Stmt declaration(boolean replPrompt) {
-        try {
-            if (match(CLASS)) return classDeclaration();
-            if (check(FUN) && peekNext().type != LEFT_PAREN) {
-                advance();
-                return function();
-            }
-            if (match(VAR)) return varDeclaration();
-            return statement(replPrompt);
-        } catch (ParseError error) {
-            synchronize();
-            return null;
+        final Stmt declaration;
+        if (match(CLASS)) {
+            declaration = classDeclaration();
+        } else if (check(FUN) && peekNextType() != LEFT_PAREN) {
+            current++;
+            declaration = function();
+        } else if (match(VAR)) {
+            declaration = varDeclaration();
+        } else if (match(IMPORT)) {
+            declaration = importDeclaration();
+        } else {
+            declaration = statement(replPrompt);
         }
+
+        if (!panicMode) return declaration;
+
+        synchronize();
+        return null;
     }
 
     private Stmt classDeclaration() {
-        final Token name = consume(IDENTIFIER, "Expect class name.");
+        final Token name = consumeToken(IDENTIFIER, "Expect class name.");
         Expr.Variable superclass = null;
         if (match(LESS)) {
             consume(IDENTIFIER, "Expect superclass name.");
@@ -50,7 +62,7 @@ class Parser {
         consume(LEFT_BRACE, "Expect '{' before class body.");
 
         final List<Stmt.Method> methods = new ArrayList<>();
-        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        while (!panicMode && !check(RIGHT_BRACE) && !isAtEnd()) {
             final boolean isClass = match(CLASS);
             methods.add(method(isClass));
         }
@@ -62,7 +74,7 @@ class Parser {
     private Stmt.Method method(boolean isClass) {
         final String kind = isClass ? "class method" : "method";
 
-        final Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+        final Token name = consumeToken(IDENTIFIER, "Expect " + kind + " name.");
         consume(LEFT_PAREN, "Expect '(' before " + kind + " parameters.");
         final List<Token> parameters = parameterList();
 
@@ -72,7 +84,7 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        final Token name = consume(IDENTIFIER, "Expect variable name.");
+        final Token name = consumeToken(IDENTIFIER, "Expect variable name.");
 
         Expr initializer =  null;
         if (match(EQUAL)) {
@@ -83,6 +95,13 @@ class Parser {
         return new Stmt.Var(name, initializer);
     }
 
+    private Stmt importDeclaration() {
+        final Token keyword = previous();
+        final Token path = consumeToken(STRING, "Expect module path after 'import'.");
+        consume(SEMICOLON, "Expect ';' after module path.");
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt statement(boolean replPrompt) {
         if (match(BREAK)) return breakStatement();
         if (match(FOR)) return forStatement();
@@ -102,6 +121,7 @@ class Parser {
     }
 
     private Stmt forStatement() {
+        final Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
         final Stmt initializer;
         if (match(SEMICOLON)) {
@@ -135,7 +155,7 @@ class Parser {
         }
 
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -176,12 +196,13 @@ class Parser {
     }
 
     private Stmt whileStatement() {
+        final Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         final Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         final Stmt body = statement(false);
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt expressionStatement(boolean replPrompt) {
@@ -191,18 +212,18 @@ class Parser {
         }
 
         if (!replPrompt) {
-            throw error(peek(), "Expect ';' after expression.");
-        }
-
-        if (isAtEnd()) {
+            panic(peek(), "Expect ';' after expression.");
+        } else if (isAtEnd()) {
             return new Stmt.Print(expr);
+        } else {
+            panic(peek(), "Unexpected token after expression.");
         }
 
-        throw error(peek(), "Unexpected token after expression.");
+        return new Stmt.Expression(expr);
     }
 
     private Stmt.Function function() {
-        final Token name = consume(IDENTIFIER, "Expect function name.");
+        final Token name = consumeToken(IDENTIFIER, "Expect function name.");
         final Expr.Function function = anonymousFunction("function");
         return new Stmt.Function(name, function);
     }
@@ -224,7 +245,7 @@ class Parser {
                     error(peek(), "Can't have more than 255 parameters.");
                 }
 
-                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+                parameters.add(consumeToken(IDENTIFIER, "Expect parameter name."));
             } while (match(COMMA));
         }
 
@@ -234,7 +255,7 @@ class Parser {
 
     private List<Stmt> block() {
         final List<Stmt> statements = new ArrayList<>();
-        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        while (!panicMode && !check(RIGHT_BRACE) && !isAtEnd()) {
             statements.add(declaration(false));
         }
 
@@ -247,6 +268,8 @@ class Parser {
     }
 
     private Expr assignment() {
+        if (match(YIELD)) return yieldExpression();
+
         final Expr expr = ternary();
 
         if (match(EQUAL)) {
@@ -264,6 +287,27 @@ class Parser {
         return expr;
     }
 
+    private Expr yieldExpression() {
+        final Token keyword = previous();
+        Expr value = null;
+        if (startsExpression()) {
+            value = assignment();
+        }
+
+        return new Expr.Yield(keyword, value);
+    }
+
+    // A bare yield can be followed by anything that ends an expression,
+    // like the ',' between arguments.
+    private boolean startsExpression() {
+        if (panicMode || isAtEnd()) return false;
+        return switch (tokens.type(current)) {
+            case BANG, MINUS, LEFT_PAREN, FUN, YIELD, IDENTIFIER, STRING, NUMBER,
+                 FALSE, TRUE, NIL, THIS, SUPER -> true;
+            default -> false;
+        };
+    }
+
     private Expr ternary() {
         final Expr expr = or();
         if (match(QUESTION)) {
@@ -350,7 +394,7 @@ class Parser {
             if (match(LEFT_PAREN)) {
                 expr = finishCall(expr);
             } else if (match(DOT)) {
-                final Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+                final Token name = consumeToken(IDENTIFIER, "Expect property name after '.'.");
                 expr = new Expr.Get(expr, name);
             } else {
                 break;
@@ -371,7 +415,7 @@ class Parser {
             } while (match(COMMA));
         }
 
-        final Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        final Token paren = consumeToken(RIGHT_PAREN, "Expect ')' after arguments.");
         return new Expr.Call(callee, paren, arguments);
     }
 
@@ -381,13 +425,13 @@ class Parser {
         if (match(NIL)) return new Expr.Literal(null);
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(tokens.literal(current - 1));
         }
 
         if (match(SUPER)) {
             final Token keyword = previous();
             consume(DOT, "Expect '.' after 'super'.");
-            final Token method = consume(IDENTIFIER, "Expect superclass method name.");
+            final Token method = consumeToken(IDENTIFIER, "Expect superclass method name.");
             return new Expr.Super(keyword, method);
         }
 
@@ -407,13 +451,14 @@ class Parser {
             return anonymousFunction("anonymous function");
         }
 
-        throw error(peek(), "Expect expression.");
+        panic(peek(), "Expect expression.");
+        return new Expr.Literal(null);
     }
 
     private boolean match(TokenType... types) {
         for (final TokenType type : types) {
             if (check(type)) {
-                advance();
+                current++;
                 return true;
             }
         }
@@ -421,14 +466,25 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            current++;
+        } else {
+            panic(peek(), message);
+        }
+    }
+
+    private Token consumeToken(TokenType type, String message) {
         if (check(type)) return advance();
-        throw error(peek(), message);
+
+        final Token token = peek();
+        panic(token, message);
+        return token;
     }
 
     private boolean check(TokenType type) {
-        if (isAtEnd()) return false;
-        return peek().type == type;
+        if (panicMode || isAtEnd()) return false;
+        return tokens.type(current) == type;
     }
 
     private Token advance() {
@@ -437,41 +493,49 @@ class Parser {
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.type(current) == TokenType.EOF;
     }
 
+    // Only the tokens kept in the tree or reported in errors are turned
+    // into Token objects. Punctuation is consumed by type alone and
+    // literals are read straight from the buffer.
     private Token peek() {
         return tokens.get(current);
     }
 
-    private Token peekNext() {
-        if (tokens.size() < current + 2) return tokens.get(tokens.size() - 1);
-        return tokens.get(current + 1);
+    private TokenType peekNextType() {
+        if (tokens.size() < current + 2) return tokens.type(tokens.size() - 1);
+        return tokens.type(current + 1);
     }
 
     private Token previous() {
         return tokens.get(current - 1);
     }
 
-    private ParseError error(Token token, String message) {
-        Lox.error(token, message);
-        return new ParseError();
+    private void error(Token token, String message) {
+        if (!panicMode) diagnostics.error(token, message);
+    }
+
+    private void panic(Token token, String message) {
+        error(token, message);
+        panicMode = true;
     }
 
     private void synchronize() {
-        advance();
+        panicMode = false;
+        if (!isAtEnd()) current++;
         while(!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-            switch (peek().type) {
-                case CLASS, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
+            if (tokens.type(current - 1) == SEMICOLON) return;
+            switch (tokens.type(current)) {
+                case CLASS, VAR, FOR, IF, WHILE, PRINT, RETURN, IMPORT -> {
                     return;
                 }
                 case FUN -> {
-                    if (peekNext().type == IDENTIFIER) return;
+                    if (peekNextType() == IDENTIFIER) return;
                 }
             }
 
-            advance();
+            current++;
         }
     }
 }
@@ -0,0 +1,190 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+class Profiler {
+    private static final int TOP_COUNT = 20;
+
+    private static class FunctionStats {
+        final String name;
+        long calls = 0;
+        long inclusiveTime = 0;
+        long exclusiveTime = 0;
+        long allocatedBytes = 0;
+        int active = 0;
+
+        FunctionStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class LineStats {
+        final int line;
+        long count = 0;
+        long selfTime = 0;
+
+        LineStats(int line) {
+            this.line = line;
+        }
+    }
+
+    private static class CallNode {
+        final String name;
+        final Map<Expr.Function, CallNode> children = new LinkedHashMap<>();
+        long selfTime = 0;
+
+        CallNode(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class CallFrame {
+        final FunctionStats stats;
+        final CallNode node;
+        final long start;
+        final long startAllocated;
+        long calleeTime = 0;
+        long calleeAllocated = 0;
+
+        CallFrame(FunctionStats stats, CallNode node, long start, long startAllocated) {
+            this.stats = stats;
+            this.node = node;
+            this.start = start;
+            this.startAllocated = startAllocated;
+        }
+    }
+
+    private static class StatementFrame {
+        final LineStats stats;
+        final long start;
+        long nestedTime = 0;
+
+        StatementFrame(LineStats stats, long start) {
+            this.stats = stats;
+            this.start = start;
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads = allocationCounter();
+    private final Map<Expr.Function, FunctionStats> functions = new HashMap<>();
+    private final Map<Integer, LineStats> lines = new HashMap<>();
+    private final Map<Stmt, LineStats> statementLines = new HashMap<>();
+    private final CallNode root = new CallNode("<script>");
+    private final Deque<CallFrame> calls = new ArrayDeque<>();
+    private final Deque<StatementFrame> statements = new ArrayDeque<>();
+    private long scriptTime = 0;
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+
+        return null;
+    }
+
+    void enterFunction(LoxFunction function) {
+        final Expr.Function declaration = function.declaration();
+        final FunctionStats stats = functions.computeIfAbsent(declaration,
+            key -> new FunctionStats(function.profileName()));
+        stats.calls++;
+        stats.active++;
+
+        final CallNode parent = calls.isEmpty() ? root : calls.peek().node;
+        final CallNode node = parent.children.computeIfAbsent(declaration,
+            key -> new CallNode(stats.name));
+
+        calls.push(new CallFrame(stats, node, System.nanoTime(), allocatedBytes()));
+    }
+
+    void exitFunction() {
+        final CallFrame frame = calls.pop();
+        final long elapsed = System.nanoTime() - frame.start;
+        final long allocated = allocatedBytes() - frame.startAllocated;
+
+        final FunctionStats stats = frame.stats;
+        stats.active--;
+        if (stats.active == 0) stats.inclusiveTime += elapsed;
+        stats.exclusiveTime += elapsed - frame.calleeTime;
+        stats.allocatedBytes += allocated - frame.calleeAllocated;
+        frame.node.selfTime += elapsed - frame.calleeTime;
+
+        final CallFrame caller = calls.peek();
+        if (caller != null) {
+            caller.calleeTime += elapsed;
+            caller.calleeAllocated += allocated;
+        } else {
+            root.selfTime -= elapsed;
+        }
+    }
+
+    void enterStatement(Stmt stmt) {
+        final LineStats stats = statementLines.computeIfAbsent(stmt,
+            key -> lines.computeIfAbsent(Lines.of(key), LineStats::new));
+        stats.count++;
+        statements.push(new StatementFrame(stats, System.nanoTime()));
+    }
+
+    void exitStatement() {
+        final StatementFrame frame = statements.pop();
+        final long elapsed = System.nanoTime() - frame.start;
+        frame.stats.selfTime += elapsed - frame.nestedTime;
+
+        final StatementFrame parent = statements.peek();
+        if (parent != null) {
+            parent.nestedTime += elapsed;
+        } else {
+            scriptTime += elapsed;
+        }
+    }
+
+    private long allocatedBytes() {
+        if (threads == null) return 0;
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    void writeCollapsedStacks(String path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8)) {
+            final CallNode script = new CallNode(root.name);
+            script.children.putAll(root.children);
+            script.selfTime = root.selfTime + scriptTime;
+            writeCollapsedStacks(writer, script, script.name);
+        }
+    }
+
+    private void writeCollapsedStacks(PrintWriter writer, CallNode node, String stack) {
+        final long micros = node.selfTime / 1000;
+        if (micros > 0) writer.println(stack + " " + micros);
+
+        for (final CallNode child : node.children.values()) {
+            writeCollapsedStacks(writer, child, stack + ";" + child.name);
+        }
+    }
+
+    void printSummary(PrintStream out) {
+        final List<FunctionStats> hotFunctions = new ArrayList<>(functions.values());
+        hotFunctions.sort(Comparator.comparingLong((FunctionStats stats) -> stats.exclusiveTime).reversed());
+
+        out.println("Functions by exclusive time:");
+        out.printf("%12s %12s %12s %12s  %s%n", "calls", "incl ms", "excl ms", "alloc KB", "function");
+        for (final FunctionStats stats : hotFunctions.subList(0, Math.min(TOP_COUNT, hotFunctions.size()))) {
+            out.printf("%12d %12.3f %12.3f %12d  %s%n",
+                stats.calls, stats.inclusiveTime / 1e6, stats.exclusiveTime / 1e6,
+                stats.allocatedBytes / 1024, stats.name);
+        }
+
+        final List<LineStats> hotLines = new ArrayList<>(lines.values());
+        hotLines.sort(Comparator.comparingLong((LineStats stats) -> stats.selfTime).reversed());
+
+        out.println();
+        out.println("Lines by self time:");
+        out.printf("%12s %12s  %s%n", "executions", "self ms", "line");
+        for (final LineStats stats : hotLines.subList(0, Math.min(TOP_COUNT, hotLines.size()))) {
+            out.printf("%12d %12.3f  %d%n", stats.count, stats.selfTime / 1e6, stats.line);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package linewelder.lox;
+
+import java.io.*;
+import java.util.*;
+
+class Program {
+    final List<Stmt> statements;
+
+    Program(List<ModuleLoader.Module> modules) {
+        final List<Stmt> statements = new ArrayList<>();
+        for (final ModuleLoader.Module module : modules) {
+            statements.addAll(module.statements);
+        }
+
+        this.statements = Collections.unmodifiableList(statements);
+    }
+
+    private Program(FlatAst ast) {
+        this.statements = Collections.unmodifiableList(ast.decode());
+    }
+
+    static Program read(InputStream stream) throws IOException {
+        try (InputStream input = stream) {
+            return new Program(FlatAst.read(input));
+        }
+    }
+
+    void write(OutputStream stream) throws IOException {
+        FlatAst.encode(statements).write(stream);
+    }
+}
@@ -5,11 +5,13 @@ import java.util.*;
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private static class LocalVariable {
         final Token name;
+        final String lexeme;
         boolean defined = false;
         boolean used = false;
 
-        LocalVariable(Token name) {
+        LocalVariable(Token name, String lexeme) {
             this.name = name;
+            this.lexeme = lexeme;
         }
     }
 
@@ -26,14 +28,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, LocalVariable>> scopes = new Stack<>();
+    private final Diagnostics diagnostics;
+    // Locals of all open scopes in declaration order, as in clox's
+    // compiler. scopes holds the index of the first local of each open
+    // scope, so a local's slot is its offset from the start of its scope.
+    private LocalVariable[] locals = new LocalVariable[16];
+    private int localCount = 0;
+    private int[] scopes = new int[8];
+    private int scopeCount = 0;
     private FunctionType currentFunction = FunctionType.NONE;
+    private Expr.Function currentDeclaration = null;
     private ClassType currentClass = ClassType.NONE;
     private boolean inLoop = false;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    Resolver(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
     }
 
     void resolve(List<Stmt> statements) {
@@ -51,47 +60,91 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<>());
+        if (scopeCount == scopes.length) scopes = Arrays.copyOf(scopes, scopeCount * 2);
+        scopes[scopeCount++] = localCount;
     }
 
-    private void endScope() {
-        final Map<String, LocalVariable> scope = scopes.pop();
-        for (final LocalVariable variable : scope.values()) {
-            if (!variable.used) {
-                Lox.error(variable.name, "Unused local variable.");
+    private int endScope() {
+        final int start = scopes[--scopeCount];
+        for (int i = start; i < localCount; i++) {
+            if (!locals[i].used) {
+                diagnostics.error(locals[i].name, "Unused local variable.");
             }
+            locals[i] = null;
         }
+
+        final int size = localCount - start;
+        localCount = start;
+        return size;
+    }
+
+    private LocalVariable addLocal(Token name, String lexeme) {
+        if (localCount == locals.length) locals = Arrays.copyOf(locals, localCount * 2);
+        final LocalVariable variable = new LocalVariable(name, lexeme);
+        locals[localCount++] = variable;
+        return variable;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
-        final Map<String, LocalVariable> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Already a variable with this name in this scope.");
+    private void addReceiver(String lexeme) {
+        beginScope();
+        final LocalVariable variable = addLocal(null, lexeme);
+        variable.defined = true;
+        variable.used = true;
+    }
+
+    private int findInScope(String lexeme) {
+        for (int i = localCount - 1; i >= scopes[scopeCount - 1]; i--) {
+            if (locals[i].lexeme.equals(lexeme)) return i;
         }
 
-        scope.put(name.lexeme, new LocalVariable(name));
+        return -1;
+    }
+
+    private int declare(Token name) {
+        if (scopeCount == 0) return -1;
+        if (findInScope(name.lexeme) >= 0) {
+            diagnostics.error(name, "Already a variable with this name in this scope.");
+        }
+
+        addLocal(name, name.lexeme);
+        return localCount - 1 - scopes[scopeCount - 1];
     }
 
     private void define(Token name) {
-        if (scopes.isEmpty()) return;
-        scopes.peek().get(name.lexeme).defined = true;
+        if (scopeCount == 0) return;
+        locals[findInScope(name.lexeme)].defined = true;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            final LocalVariable variable = scopes.get(i).get(name.lexeme);
-            if (variable != null) {
-                variable.used = true;
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+    private int resolveLocal(Token name) {
+        for (int i = localCount - 1; i >= 0; i--) {
+            if (locals[i].lexeme.equals(name.lexeme)) {
+                locals[i].used = true;
+                return i;
             }
         }
+
+        return -1;
+    }
+
+    private int scopeOf(int local) {
+        int scope = scopeCount - 1;
+        while (scopes[scope] > local) scope--;
+        return scope;
+    }
+
+    private int depth(int local) {
+        return local < 0 ? -1 : scopeCount - 1 - scopeOf(local);
+    }
+
+    private int slot(int local) {
+        return local < 0 ? 0 : local - scopes[scopeOf(local)];
     }
 
     private void resolveFunction(Expr.Function function, FunctionType type) {
         final FunctionType enclosingFunction = currentFunction;
+        final Expr.Function enclosingDeclaration = currentDeclaration;
         currentFunction = type;
+        currentDeclaration = function;
 
         beginScope();
         for (final Token param : function.params) {
@@ -99,15 +152,18 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             define(param);
         }
         resolve(function.body);
-        endScope();
+        function.slots = endScope();
 
         currentFunction = enclosingFunction;
+        currentDeclaration = enclosingDeclaration;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        final int local = resolveLocal(expr.name);
+        expr.depth = depth(local);
+        expr.slot = slot(local);
         return null;
     }
 
@@ -167,23 +223,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+            diagnostics.error(expr.keyword, "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expr.keyword, "Can't use 'super in a class with no superclass.");
+            diagnostics.error(expr.keyword, "Can't use 'super in a class with no superclass.");
         }
 
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depth(resolveLocal(expr.keyword));
         return null;
     }
 
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+            diagnostics.error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
 
-        resolveLocal(expr, expr.keyword);
+        expr.depth = depth(resolveLocal(expr.keyword));
         return null;
     }
 
@@ -195,14 +251,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.empty()) {
-            final LocalVariable variable = scopes.peek().get(expr.name.lexeme);
-            if (variable != null && !variable.defined) {
-                Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        if (scopeCount > 0) {
+            final int variable = findInScope(expr.name.lexeme);
+            if (variable >= 0 && !locals[variable].defined) {
+                diagnostics.error(expr.name, "Can't read local variable in its own initializer.");
             }
         }
 
-        resolveLocal(expr, expr.name);
+        final int local = resolveLocal(expr.name);
+        expr.depth = depth(local);
+        expr.slot = slot(local);
         return null;
     }
 
@@ -214,9 +272,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitYieldExpr(Expr.Yield expr) {
+        if (currentFunction == FunctionType.NONE) {
+            diagnostics.error(expr.keyword, "Can't yield from top-level code.");
+        } else if (currentFunction == FunctionType.INITIALIZER) {
+            diagnostics.error(expr.keyword, "Can't yield from an initializer.");
+        } else {
+            currentDeclaration.isGenerator = true;
+        }
+
+        if (expr.value != null) resolve(expr.value);
+        return null;
+    }
+
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
-        if (!inLoop) Lox.error(stmt.token, "Break outside a loop.");
+        if (!inLoop) diagnostics.error(stmt.token, "Break outside a loop.");
         return null;
     }
 
@@ -224,18 +296,18 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
         resolve(stmt.statements);
-        endScope();
+        stmt.slots = endScope();
         return null;
     }
 
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         if (stmt.superclass != null) {
             if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-                Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+                diagnostics.error(stmt.superclass.name, "A class can't inherit from itself.");
             }
             resolve(stmt.superclass);
         }
@@ -245,19 +317,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         if (stmt.superclass != null) {
             currentClass = ClassType.SUBCLASS;
-
-            beginScope();
-            final LocalVariable super_ = new LocalVariable(null);
-            super_.defined = true;
-            super_.used = true;
-            scopes.peek().put("super", super_);
+            addReceiver("super");
         }
 
-        beginScope();
-        final LocalVariable this_ = new LocalVariable(null);
-        this_.defined = true;
-        this_.used = true;
-        scopes.peek().put("this", this_);
+        addReceiver("this");
 
         for (final Stmt.Method method : stmt.methods) {
             resolve(method);
@@ -278,7 +341,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         resolve(stmt.function);
@@ -304,6 +367,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        if (scopeCount > 0) {
+            diagnostics.error(stmt.keyword, "Can only import at top level.");
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         resolve(stmt.value);
@@ -313,12 +384,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Can't return from top-level code.");
+            diagnostics.error(stmt.keyword, "Can't return from top-level code.");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(stmt.keyword, "Can't return a value from an initializer");
+                diagnostics.error(stmt.keyword, "Can't return a value from an initializer");
+            } else if (currentFunction != FunctionType.NONE && stmt.value instanceof Expr.Call) {
+                stmt.isTailCall = true;
             }
             resolve(stmt.value);
         }
@@ -327,7 +400,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -1,50 +1,72 @@
 package linewelder.lox;
 
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 class Scanner {
-    private static final Map<String, TokenType> keywords;
+    private static final byte ALPHA = 1;
+    private static final byte DIGIT = 2;
+    private static final byte[] CHARACTERS = new byte[128];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("and", TokenType.AND);
-        keywords.put("break", TokenType.BREAK);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("if", TokenType.IF);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("while", TokenType.WHILE);
-    }
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+        for (char c = 'a'; c <= 'z'; c++) CHARACTERS[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) CHARACTERS[c] = ALPHA;
+        for (char c = '0'; c <= '9'; c++) CHARACTERS[c] = DIGIT;
+        CHARACTERS['_'] = ALPHA;
+    }
+
+    private final ByteBuffer source;
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+    private final Diagnostics diagnostics;
+    private final TokenBuffer tokens;
     private int start = 0;
     private int current = 0;
-    private int line = 1;
+    private int line;
+    private boolean unterminated = false;
 
-    Scanner(String source) {
+    Scanner(String source, Diagnostics diagnostics) {
+        this(source, 1, diagnostics);
+    }
+
+    Scanner(String source, int line, Diagnostics diagnostics) {
+        this(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), line, diagnostics);
+    }
+
+    // Scans UTF-8 directly, so a memory-mapped file never has to be decoded
+    // as a whole. Tokens only record where they are in the source; lexemes
+    // become strings in TokenBuffer, if at all.
+    Scanner(ByteBuffer source, Diagnostics diagnostics) {
+        this(source, 1, diagnostics);
+    }
+
+    Scanner(ByteBuffer source, int line, Diagnostics diagnostics) {
         this.source = source;
+        this.array = source.hasArray() ? source.array() : null;
+        this.offset = source.hasArray() ? source.arrayOffset() : 0;
+        this.length = source.limit();
+        this.line = line;
+        this.diagnostics = diagnostics;
+        this.tokens = new TokenBuffer(source);
     }
 
-    List<Token> scanTokens() {
+    TokenBuffer scanTokens() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(TokenType.EOF, "", null, line));
+        tokens.add(TokenType.EOF, current, 0, line);
         return tokens;
     }
 
+    // Whether the source ended inside a string or a multiline comment,
+    // which the prompt takes as a sign that more lines are coming.
+    boolean isUnterminated() {
+        return unterminated;
+    }
+
     private void scanToken() {
         final char c = advance();
         switch (c) {
@@ -60,17 +82,25 @@ class Scanner {
             case '*' -> addToken(TokenType.STAR);
             case '?' -> addToken(TokenType.QUESTION);
             case ':' -> addToken(TokenType.COLON);
-            case '!' -> addToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
-            case '=' -> addToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
-            case '<' -> addToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
-            case '>' -> addToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
+            case '!' -> {
+                if (match('=')) addToken(TokenType.BANG_EQUAL); else addToken(TokenType.BANG);
+            }
+            case '=' -> {
+                if (match('=')) addToken(TokenType.EQUAL_EQUAL); else addToken(TokenType.EQUAL);
+            }
+            case '<' -> {
+                if (match('=')) addToken(TokenType.LESS_EQUAL); else addToken(TokenType.LESS);
+            }
+            case '>' -> {
+                if (match('=')) addToken(TokenType.GREATER_EQUAL); else addToken(TokenType.GREATER);
+            }
 
             case '/' -> {
                 if (match('/')) {
                     while (peek() != '\n' && !isAtEnd()) advance();
                 } else if (match('*')) {
                     multilineComment();
-                }else {
+                } else {
                     addToken(TokenType.SLASH);
                 }
             }
@@ -81,12 +111,13 @@ class Scanner {
             case '"' -> string();
 
             default -> {
-                if (isDigit(c)) {
+                final byte kind = c < 128 ? CHARACTERS[c] : 0;
+                if (kind == DIGIT) {
                     number();
-                } else if (isAlpha(c)) {
+                } else if (kind == ALPHA) {
                     identifier();
-                } else {
-                    Lox.error(line, "Unexpected character.");
+                } else if (!isContinuationByte(c)) {
+                    diagnostics.error(line, column(start), "Unexpected character.");
                 }
             }
         }
@@ -95,10 +126,54 @@ class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        final String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENTIFIER;
-        addToken(type);
+        addToken(keyword());
+    }
+
+    // Decides keyword or identifier without allocating: a switch on the
+    // first character picks the only candidates, which are then compared
+    // in place.
+    private TokenType keyword() {
+        return switch (charAt(start)) {
+            case 'a' -> matchKeyword("and", TokenType.AND);
+            case 'b' -> matchKeyword("break", TokenType.BREAK);
+            case 'c' -> matchKeyword("class", TokenType.CLASS);
+            case 'e' -> matchKeyword("else", TokenType.ELSE);
+            case 'f' -> current - start < 2 ? TokenType.IDENTIFIER : switch (charAt(start + 1)) {
+                case 'a' -> matchKeyword("false", TokenType.FALSE);
+                case 'o' -> matchKeyword("for", TokenType.FOR);
+                case 'u' -> matchKeyword("fun", TokenType.FUN);
+                default -> TokenType.IDENTIFIER;
+            };
+            case 'i' -> current - start < 2 ? TokenType.IDENTIFIER : switch (charAt(start + 1)) {
+                case 'f' -> matchKeyword("if", TokenType.IF);
+                case 'm' -> matchKeyword("import", TokenType.IMPORT);
+                default -> TokenType.IDENTIFIER;
+            };
+            case 'n' -> matchKeyword("nil", TokenType.NIL);
+            case 'o' -> matchKeyword("or", TokenType.OR);
+            case 'p' -> matchKeyword("print", TokenType.PRINT);
+            case 'r' -> matchKeyword("return", TokenType.RETURN);
+            case 's' -> matchKeyword("super", TokenType.SUPER);
+            case 't' -> current - start < 2 ? TokenType.IDENTIFIER : switch (charAt(start + 1)) {
+                case 'h' -> matchKeyword("this", TokenType.THIS);
+                case 'r' -> matchKeyword("true", TokenType.TRUE);
+                default -> TokenType.IDENTIFIER;
+            };
+            case 'v' -> matchKeyword("var", TokenType.VAR);
+            case 'w' -> matchKeyword("while", TokenType.WHILE);
+            case 'y' -> matchKeyword("yield", TokenType.YIELD);
+            default -> TokenType.IDENTIFIER;
+        };
+    }
+
+    private TokenType matchKeyword(String keyword, TokenType type) {
+        final int length = keyword.length();
+        if (current - start != length) return TokenType.IDENTIFIER;
+        for (int i = 0; i < length; i++) {
+            if (charAt(start + i) != keyword.charAt(i)) return TokenType.IDENTIFIER;
+        }
+
+        return type;
     }
 
     private void number() {
@@ -109,7 +184,7 @@ class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(TokenType.NUMBER);
     }
 
     private void string() {
@@ -119,14 +194,13 @@ class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            unterminated = true;
+            diagnostics.error(line, column(current), "Unterminated string.");
             return;
         }
 
         advance();
-
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING);
     }
 
     private void multilineComment() {
@@ -149,12 +223,13 @@ class Scanner {
             }
         }
 
-        Lox.error(line, "Unterminated multiline comment.");
+        unterminated = true;
+        diagnostics.error(line, column(current), "Unterminated multiline comment.");
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (charAt(current) != expected) return false;
 
         current++;
         return true;
@@ -162,42 +237,53 @@ class Scanner {
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return charAt(current);
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
-    }
-
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-               (c >= 'A' && c <= 'Z') ||
-                c == '_';
+        if (current + 1 >= length) return '\0';
+        return charAt(current + 1);
     }
 
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+    private static boolean isAlphaNumeric(char c) {
+        return c < 128 && CHARACTERS[c] != 0;
     }
 
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+    private static boolean isDigit(char c) {
+        return c < 128 && CHARACTERS[c] == DIGIT;
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= length;
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return charAt(current++);
     }
 
-    private void addToken(TokenType type) {
-        addToken(type, null);
+    // Bytes above ASCII come out as chars 128-255, which are never part of
+    // a token outside of string literals. Heap buffers are read through
+    // their array, which skips the buffer's own bounds checks.
+    private char charAt(int index) {
+        if (array != null) return (char)(array[offset + index] & 0xFF);
+        return (char)(source.get(index) & 0xFF);
+    }
+
+    // Only needed for errors, so it simply walks back to the line start.
+    private int column(int offset) {
+        int column = 1;
+        for (int i = offset - 1; i >= 0 && charAt(i) != '\n'; i--) {
+            if (!isContinuationByte(charAt(i))) column++;
+        }
+
+        return column;
+    }
+
+    private static boolean isContinuationByte(char c) {
+        return (c & 0xC0) == 0x80;
     }
 
-    private void addToken(TokenType type, Object literal) {
-        final String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(TokenType type) {
+        tokens.add(type, start, current - start, line);
     }
 }
@@ -0,0 +1,39 @@
+package linewelder.lox;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The names of an instance's fields, in the order they were first
+// assigned. Instances that get the same fields in the same order share a
+// shape, so each of them only keeps an array of values. Shapes form a
+// tree rooted at EMPTY with one transition per added field.
+final class Shape {
+    static final Shape EMPTY = new Shape(new String[0]);
+
+    private final String[] names;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>(2);
+
+    private Shape(String[] names) {
+        this.names = names;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+
+        return -1;
+    }
+
+    Shape with(String name) {
+        return transitions.computeIfAbsent(name, key -> {
+            final String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+            names[this.names.length] = key;
+            return new Shape(names);
+        });
+    }
+}
@@ -10,6 +10,7 @@ abstract class Stmt {
         R visitExpressionStmt(Expression stmt);
         R visitFunctionStmt(Function stmt);
         R visitIfStmt(If stmt);
+        R visitImportStmt(Import stmt);
         R visitMethodStmt(Method stmt);
         R visitPrintStmt(Print stmt);
         R visitReturnStmt(Return stmt);
@@ -32,6 +33,7 @@ abstract class Stmt {
 
     static class Block extends Stmt {
         final List<Stmt> statements;
+        int slots;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -47,6 +49,7 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Method> methods;
+        int slot = -1;
 
         Class(Token name, Expr.Variable superclass, List<Stmt.Method> methods) {
             this.name = name;
@@ -76,6 +79,7 @@ abstract class Stmt {
     static class Function extends Stmt {
         final Token name;
         final Expr.Function function;
+        int slot = -1;
 
         Function(Token name, Expr.Function function) {
             this.name = name;
@@ -105,6 +109,21 @@ abstract class Stmt {
         }
     }
 
+    static class Import extends Stmt {
+        final Token keyword;
+        final Token path;
+
+        Import(Token keyword, Token path) {
+            this.keyword = keyword;
+            this.path = path;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStmt(this);
+        }
+    }
+
     static class Method extends Stmt {
         final Token name;
         final Expr.Function function;
@@ -138,6 +157,7 @@ abstract class Stmt {
     static class Return extends Stmt {
         final Token keyword;
         final Expr value;
+        boolean isTailCall;
 
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
@@ -153,6 +173,7 @@ abstract class Stmt {
     static class Var extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
 
         Var(Token name, Expr initializer) {
             this.name = name;
@@ -166,10 +187,12 @@ abstract class Stmt {
     }
 
     static class While extends Stmt {
+        final Token keyword;
         final Expr condition;
         final Stmt body;
 
-        While(Expr condition, Stmt body) {
+        While(Token keyword, Expr condition, Stmt body) {
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
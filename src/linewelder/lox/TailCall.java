@@ -0,0 +1,12 @@
+package linewelder.lox;
+
+class TailCall extends RuntimeException {
+    final LoxFunction function;
+    final Object[] arguments;
+
+    TailCall(LoxFunction function, Object[] arguments) {
+        super(null, null, false, false);
+        this.function = function;
+        this.arguments = arguments;
+    }
+}
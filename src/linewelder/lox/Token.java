@@ -5,12 +5,18 @@ class Token {
     final String lexeme;
     final Object literal;
     final int line;
+    final int column;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, 0);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int column) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.column = column;
     }
 
     public String toString() {
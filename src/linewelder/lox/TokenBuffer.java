@@ -0,0 +1,167 @@
+package linewelder.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Tokens stored as parallel arrays of types, source offsets, lengths and
+// lines: 13 bytes per token instead of a Token object with its lexeme and
+// boxed literal. Lexemes and literals are only created from the source
+// when the parser asks for a Token, which it does just for the tokens that
+// end up in the tree.
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] LEXEMES = new String[TYPES.length];
+
+    static {
+        for (final TokenType type : TYPES) {
+            LEXEMES[type.ordinal()] = switch (type) {
+                case LEFT_PAREN -> "(";
+                case RIGHT_PAREN -> ")";
+                case LEFT_BRACE -> "{";
+                case RIGHT_BRACE -> "}";
+                case COMMA -> ",";
+                case DOT -> ".";
+                case MINUS -> "-";
+                case PLUS -> "+";
+                case SEMICOLON -> ";";
+                case SLASH -> "/";
+                case STAR -> "*";
+                case QUESTION -> "?";
+                case COLON -> ":";
+                case BANG -> "!";
+                case BANG_EQUAL -> "!=";
+                case EQUAL -> "=";
+                case EQUAL_EQUAL -> "==";
+                case GREATER -> ">";
+                case GREATER_EQUAL -> ">=";
+                case LESS -> "<";
+                case LESS_EQUAL -> "<=";
+                case IDENTIFIER, STRING, NUMBER -> null;
+                case EOF -> "";
+                default -> type.name().toLowerCase(Locale.ROOT);
+            };
+        }
+    }
+
+    private final ByteBuffer source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int size = 0;
+    private int columnOffset = 0;
+    private int column = 1;
+
+    // Sources average several bytes per token, so this usually grows a
+    // few times rather than reserving more than the source itself.
+    TokenBuffer(ByteBuffer source) {
+        this(source, Math.max(16, source.limit() / 32));
+    }
+
+    TokenBuffer(ByteBuffer source, int capacity) {
+        this.source = source;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) grow(size + 1);
+
+        types[size] = (byte)type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    // Appends the first count tokens of a buffer that was scanned from a
+    // slice of this buffer's source starting at offset.
+    void append(TokenBuffer chunk, int count, int offset) {
+        if (size + count > types.length) grow(size + count);
+
+        System.arraycopy(chunk.types, 0, types, size, count);
+        System.arraycopy(chunk.lengths, 0, lengths, size, count);
+        System.arraycopy(chunk.lines, 0, lines, size, count);
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = chunk.starts[i] + offset;
+        }
+        size += count;
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = Math.max(minCapacity, types.length + (types.length >> 1));
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    Token get(int index) {
+        final TokenType type = type(index);
+        final String constant = LEXEMES[type.ordinal()];
+        if (constant != null) return new Token(type, constant, null, lines[index], column(index));
+
+        final String lexeme = text(starts[index], lengths[index], type == TokenType.STRING);
+        return new Token(type, lexeme, literal(index), lines[index], column(index));
+    }
+
+    Object literal(int index) {
+        return switch (type(index)) {
+            case NUMBER -> Double.parseDouble(text(starts[index], lengths[index], false));
+            case STRING -> text(starts[index] + 1, lengths[index] - 2, true);
+            default -> null;
+        };
+    }
+
+    // Columns count characters, not bytes. Tokens are almost always asked
+    // for in order, so counting resumes where the previous token left off
+    // and a whole file costs a single pass, however long its lines are.
+    private int column(int index) {
+        final int start = starts[index];
+        if (start < columnOffset) {
+            columnOffset = start;
+            while (columnOffset > 0 && source.get(columnOffset - 1) != '\n') columnOffset--;
+            column = 1;
+        }
+
+        for (int i = columnOffset; i < start; i++) {
+            final byte c = source.get(i);
+            if (c == '\n') {
+                column = 1;
+            } else if ((c & 0xC0) != 0x80) {
+                column++;
+            }
+        }
+
+        columnOffset = start;
+        return column;
+    }
+
+    // Outside of string literals tokens are plain ASCII.
+    private String text(int start, int length, boolean decode) {
+        final Charset charset = decode ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + start, length, charset);
+        }
+
+        final byte[] bytes = new byte[length];
+        source.get(start, bytes);
+        return new String(bytes, charset);
+    }
+}
@@ -14,7 +14,7 @@ enum TokenType {
 
     AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
     PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
-    BREAK,
+    BREAK, IMPORT, YIELD,
 
     EOF
 }
@@ -0,0 +1,332 @@
+package linewelder.lox;
+
+import java.util.*;
+
+// Flow-sensitive inference of which operands are definitely numbers or
+// strings, run over resolved trees. Only locals of the function being
+// analyzed are tracked, and only while no nested function assigns them:
+// such a closure can run at any call, or concurrently as a task. Globals
+// and everything else are unknown. Branches join by keeping the types
+// both sides agree on, and loops are analyzed until their entry state
+// stops changing.
+class TypeInference implements Expr.Visitor<InferredType>, Stmt.Visitor<Void> {
+    private record Local(Token name, int function) {}
+
+    private final List<Local[]> scopes = new ArrayList<>();
+    private final Set<Local> shared = new HashSet<>();
+    private Map<Local, InferredType> state = new HashMap<>();
+    private List<Map<Local, InferredType>> breaks = new ArrayList<>();
+    private int function = 0;
+
+    void infer(List<Stmt> statements) {
+        for (final Stmt statement : statements) {
+            infer(statement);
+        }
+    }
+
+    private void infer(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private InferredType infer(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void beginScope(int size) {
+        scopes.add(new Local[size]);
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private Local declare(Token name, int slot) {
+        if (slot < 0) return null;
+
+        final Local local = new Local(name, function);
+        scopes.get(scopes.size() - 1)[slot] = local;
+        state.remove(local);
+        return local;
+    }
+
+    private Local lookUp(int depth, int slot) {
+        if (depth < 0) return null;
+        return scopes.get(scopes.size() - 1 - depth)[slot];
+    }
+
+    private boolean isTracked(Local local) {
+        return local != null && local.function == function && !shared.contains(local);
+    }
+
+    private void assign(Local local, InferredType type) {
+        if (local == null) return;
+        if (local.function != function) shared.add(local);
+
+        if (!isTracked(local) || type == InferredType.UNKNOWN) {
+            state.remove(local);
+        } else {
+            state.put(local, type);
+        }
+    }
+
+    private static Map<Local, InferredType> join(Map<Local, InferredType> a, Map<Local, InferredType> b) {
+        final Map<Local, InferredType> joined = new HashMap<>();
+        for (final Map.Entry<Local, InferredType> entry : a.entrySet()) {
+            if (entry.getValue() == b.get(entry.getKey())) joined.put(entry.getKey(), entry.getValue());
+        }
+
+        return joined;
+    }
+
+    private void inferFunction(Expr.Function declaration) {
+        final Map<Local, InferredType> enclosingState = state;
+        final List<Map<Local, InferredType>> enclosingBreaks = breaks;
+        state = new HashMap<>();
+        breaks = new ArrayList<>();
+        function++;
+
+        beginScope(declaration.slots);
+        for (int i = 0; i < declaration.params.size(); i++) {
+            declare(declaration.params.get(i), i);
+        }
+        infer(declaration.body);
+        endScope();
+
+        function--;
+        state = enclosingState;
+        breaks = enclosingBreaks;
+    }
+
+    @Override
+    public InferredType visitAssignExpr(Expr.Assign expr) {
+        final InferredType type = infer(expr.value);
+        assign(lookUp(expr.depth, expr.slot), type);
+        return type;
+    }
+
+    @Override
+    public InferredType visitBinaryExpr(Expr.Binary expr) {
+        expr.leftType = infer(expr.left);
+        expr.rightType = infer(expr.right);
+
+        return switch (expr.operator.type) {
+            case MINUS, SLASH, STAR -> InferredType.NUMBER;
+            case PLUS -> {
+                if (expr.leftType == InferredType.STRING || expr.rightType == InferredType.STRING) {
+                    yield InferredType.STRING;
+                }
+                yield expr.leftType == InferredType.NUMBER && expr.rightType == InferredType.NUMBER
+                    ? InferredType.NUMBER : InferredType.UNKNOWN;
+            }
+            default -> InferredType.UNKNOWN;
+        };
+    }
+
+    @Override
+    public InferredType visitCallExpr(Expr.Call expr) {
+        infer(expr.callee);
+        for (final Expr argument : expr.arguments) {
+            infer(argument);
+        }
+
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitGetExpr(Expr.Get expr) {
+        infer(expr.object);
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitFunctionExpr(Expr.Function expr) {
+        inferFunction(expr);
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitGroupingExpr(Expr.Grouping expr) {
+        return infer(expr.expression);
+    }
+
+    @Override
+    public InferredType visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) return InferredType.NUMBER;
+        if (expr.value instanceof String) return InferredType.STRING;
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitLogicalExpr(Expr.Logical expr) {
+        final InferredType left = infer(expr.left);
+        final Map<Local, InferredType> skipped = new HashMap<>(state);
+        final InferredType right = infer(expr.right);
+        state = join(skipped, state);
+        return left.join(right);
+    }
+
+    @Override
+    public InferredType visitSetExpr(Expr.Set expr) {
+        infer(expr.object);
+        return infer(expr.value);
+    }
+
+    @Override
+    public InferredType visitSuperExpr(Expr.Super expr) {
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitThisExpr(Expr.This expr) {
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitUnaryExpr(Expr.Unary expr) {
+        expr.rightType = infer(expr.right);
+        return expr.operator.type == TokenType.MINUS ? InferredType.NUMBER : InferredType.UNKNOWN;
+    }
+
+    @Override
+    public InferredType visitVariableExpr(Expr.Variable expr) {
+        final Local local = lookUp(expr.depth, expr.slot);
+        if (!isTracked(local)) return InferredType.UNKNOWN;
+        return state.getOrDefault(local, InferredType.UNKNOWN);
+    }
+
+    @Override
+    public InferredType visitTernaryExpr(Expr.Ternary expr) {
+        infer(expr.condition);
+        final Map<Local, InferredType> before = new HashMap<>(state);
+        final InferredType ifTrue = infer(expr.ifTrue);
+        final Map<Local, InferredType> afterTrue = state;
+        state = before;
+        final InferredType ifFalse = infer(expr.ifFalse);
+        state = join(afterTrue, state);
+        return ifTrue.join(ifFalse);
+    }
+
+    @Override
+    public InferredType visitYieldExpr(Expr.Yield expr) {
+        if (expr.value != null) infer(expr.value);
+        return InferredType.UNKNOWN;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        breaks.add(new HashMap<>(state));
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope(stmt.slots);
+        infer(stmt.statements);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        declare(stmt.name, stmt.slot);
+        if (stmt.superclass != null) {
+            infer(stmt.superclass);
+            beginScope(1);
+        }
+
+        beginScope(1);
+        for (final Stmt.Method method : stmt.methods) {
+            infer(method);
+        }
+        endScope();
+
+        if (stmt.superclass != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.name, stmt.slot);
+        inferFunction(stmt.function);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        infer(stmt.condition);
+        final Map<Local, InferredType> before = new HashMap<>(state);
+        infer(stmt.thenBranch);
+        final Map<Local, InferredType> afterThen = state;
+        state = before;
+        if (stmt.elseBranch != null) infer(stmt.elseBranch);
+        state = join(afterThen, state);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitMethodStmt(Stmt.Method stmt) {
+        inferFunction(stmt.function);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        infer(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) infer(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        final Local local = declare(stmt.name, stmt.slot);
+        assign(local, stmt.initializer == null ? InferredType.UNKNOWN : infer(stmt.initializer));
+        return null;
+    }
+
+    // A closure created in one iteration may assign a local that an earlier
+    // part of the body reads in the next, so the body is analyzed again
+    // whenever it marked a local as shared, not just when types changed.
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        final List<Map<Local, InferredType>> enclosingBreaks = breaks;
+        while (true) {
+            final int sharedCount = shared.size();
+            final Map<Local, InferredType> entry = new HashMap<>(state);
+            breaks = new ArrayList<>();
+
+            infer(stmt.condition);
+            final Map<Local, InferredType> exit = new HashMap<>(state);
+            infer(stmt.body);
+
+            final Map<Local, InferredType> next = join(entry, state);
+            if (next.equals(entry) && shared.size() == sharedCount) {
+                state = exit;
+                for (final Map<Local, InferredType> exited : breaks) {
+                    state = join(state, exited);
+                }
+                break;
+            }
+
+            state = next;
+        }
+
+        breaks = enclosingBreaks;
+        return null;
+    }
+}
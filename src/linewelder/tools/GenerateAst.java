@@ -14,33 +14,35 @@ public class GenerateAst {
 
         final String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
-            "Binary   : Expr left, Token operator, Expr right",
+            "Assign   : Token name, Expr value | int depth = -1, int slot",
+            "Binary   : Expr left, Token operator, Expr right | InferredType leftType = InferredType.UNKNOWN, InferredType rightType = InferredType.UNKNOWN",
             "Call     : Expr callee, Token paren, List<Expr> arguments",
             "Get      : Expr object, Token name",
-            "Function : List<Token> params, List<Stmt> body",
+            "Function : List<Token> params, List<Stmt> body | boolean isGenerator, int slots, final Jit.State jit = new Jit.State()",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Logical  : Expr left, Token operator, Expr right",
             "Set      : Expr object, Token name, Expr value",
-            "Super    : Token keyword, Token method",
-            "This     : Token keyword",
-            "Unary    : Token operator, Expr right",
-            "Variable : Token name",
-            "Ternary  : Expr condition, Expr ifTrue, Expr ifFalse"
+            "Super    : Token keyword, Token method | int depth = -1",
+            "This     : Token keyword | int depth = -1",
+            "Unary    : Token operator, Expr right | InferredType rightType = InferredType.UNKNOWN",
+            "Variable : Token name | int depth = -1, int slot",
+            "Ternary  : Expr condition, Expr ifTrue, Expr ifFalse",
+            "Yield    : Token keyword, Expr value"
         ));
         defineAst(outputDir, "Stmt", Arrays.asList(
             "Break      : Token token",
-            "Block      : List<Stmt> statements",
-            "Class      : Token name, Expr.Variable superclass, List<Stmt.Method> methods",
+            "Block      : List<Stmt> statements | int slots",
+            "Class      : Token name, Expr.Variable superclass, List<Stmt.Method> methods | int slot = -1",
             "Expression : Expr expression",
-            "Function   : Token name, Expr.Function function",
+            "Function   : Token name, Expr.Function function | int slot = -1",
             "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+            "Import     : Token keyword, Token path",
             "Method     : Token name, Expr.Function function, boolean isClass",
             "Print      : Expr value",
-            "Return     : Token keyword, Expr value",
-            "Var        : Token name, Expr initializer",
-            "While      : Expr condition, Stmt body"
+            "Return     : Token keyword, Expr value | boolean isTailCall",
+            "Var        : Token name, Expr initializer | int slot = -1",
+            "While      : Token keyword, Expr condition, Stmt body"
         ));
     }
 
@@ -59,8 +61,9 @@ public class GenerateAst {
 
             for (final String type : types) {
                 final String className = type.split(":")[0].trim();
-                final String fields = type.split(":")[1].trim();
-                defineType(writer, baseName, className, fields);
+                final String[] fields = type.split(":")[1].split("\\|");
+                final String annotations = fields.length > 1 ? fields[1].trim() : null;
+                defineType(writer, baseName, className, fields[0].trim(), annotations);
             }
 
             writer.println("    abstract <R> R accept(Visitor<R> visitor);");
@@ -85,7 +88,7 @@ public class GenerateAst {
 
     private static void defineType(
         PrintWriter writer, String baseName,
-        String className, String fieldList
+        String className, String fieldList, String annotationList
     ) {
         writer.println("    static class " + className + " extends " + baseName + " {");
 
@@ -93,6 +96,11 @@ public class GenerateAst {
         for (final String field : fields) {
             writer.println("        final " + field + ";");
         }
+        if (annotationList != null) {
+            for (final String annotation : annotationList.split(", ")) {
+                writer.println("        " + annotation + ";");
+            }
+        }
         writer.println();
 
         writer.println("        " + className + "(" + fieldList + ") {");
@@ -0,0 +1,103 @@
+package linewelder.tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.stream.Stream;
+
+// Builds an AppCDS archive for the interpreter. Every script in the
+// training corpus is run once to record the classes it loads, and the
+// merged class list is dumped into a static archive next to a JAR of the
+// interpreter (CDS only archives classes loaded from JAR files).
+public class GenerateCdsArchive {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: generate_cds_archive <classes directory or jar> <output directory> <script>...");
+            System.exit(64);
+        }
+
+        final Path classes = Paths.get(args[0]);
+        final Path outputDir = Paths.get(args[1]);
+        Files.createDirectories(outputDir);
+
+        final Path jar = outputDir.resolve("jlox.jar").toAbsolutePath();
+        if (Files.isDirectory(classes)) {
+            writeJar(classes, jar);
+        } else {
+            Files.copy(classes, jar, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        final Set<String> classList = new LinkedHashSet<>();
+        for (int i = 2; i < args.length; i++) {
+            final Path list = Files.createTempFile(outputDir, "classes", ".lst");
+            try {
+                run("-Xshare:off", "-XX:DumpLoadedClassList=" + list, "-cp", jar.toString(),
+                    "linewelder.lox.Lox", args[i]);
+                for (final String line : Files.readAllLines(list)) {
+                    addClass(classList, line);
+                }
+            } finally {
+                Files.deleteIfExists(list);
+            }
+        }
+
+        final Path classListFile = outputDir.resolve("jlox.classlist");
+        Files.write(classListFile, classList);
+
+        final Path archive = outputDir.resolve("jlox.jsa").toAbsolutePath();
+        final int status = run("-Xshare:dump", "-XX:SharedClassListFile=" + classListFile,
+            "-XX:SharedArchiveFile=" + archive, "-cp", jar.toString());
+        if (status != 0) {
+            System.err.println("Could not dump the archive.");
+            System.exit(70);
+        }
+
+        System.out.println("Archived " + classList.size() + " classes. Run scripts with:");
+        System.out.println("    java -XX:SharedArchiveFile=" + archive + " -cp " + jar +
+            " linewelder.lox.Lox <script>");
+    }
+
+    // Class ids are only valid within a single list and classes from custom
+    // loaders (like compiled functions) can't be archived, so only the names
+    // of the classes are merged.
+    private static void addClass(Set<String> classList, String line) {
+        if (line.startsWith("#") || line.contains(" source:")) return;
+        if (line.startsWith("@")) {
+            classList.add(line);
+            return;
+        }
+
+        classList.add(line.split(" ", 2)[0]);
+    }
+
+    private static void writeJar(Path classes, Path jar) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "linewelder.lox.Lox");
+
+        try (JarOutputStream output = new JarOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(jar)), manifest);
+             Stream<Path> files = Files.walk(classes)) {
+            for (final Path file : (Iterable<Path>)files.filter(Files::isRegularFile).sorted()::iterator) {
+                final String name = classes.relativize(file).toString().replace(File.separatorChar, '/');
+                output.putNextEntry(new JarEntry(name));
+                Files.copy(file, output);
+                output.closeEntry();
+            }
+        }
+    }
+
+    private static int run(String... arguments) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(arguments));
+
+        final Process process = new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        process.getOutputStream().close();
+        return process.waitFor();
+    }
+}
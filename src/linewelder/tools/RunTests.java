@@ -0,0 +1,228 @@
+package linewelder.tools;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.*;
+import java.util.stream.Stream;
+
+// Runs every script under the test directory with jlox and checks it
+// against the expectations written in its comments:
+//
+//     // expect: output             a line the script prints, in order
+//     // expect error: text         the next error line, which must contain text
+//     // expect runtime error: msg  the runtime error raised on this line
+//     // expect exit: code          the exit code, if not implied by errors
+//     // expect stderr: regex       a line on stderr, besides any errors
+//     // args: --flag value         options passed before the script path
+//     // runs: count                how many times to run the script
+//     // repl                       type the script into the prompt instead
+//
+// In args, {tmp} stands for a directory that is shared by the runs of one
+// test and deleted afterwards. The prompts a repl test prints are left out
+// of its output.
+public class RunTests {
+    private static final Pattern EXPECT = Pattern.compile("// expect: ?(.*)");
+    private static final Pattern ERROR = Pattern.compile("// expect error: (.*)");
+    private static final Pattern RUNTIME_ERROR = Pattern.compile("// expect runtime error: (.*)");
+    private static final Pattern EXIT = Pattern.compile("// expect exit: (\\d+)");
+    private static final Pattern STDERR = Pattern.compile("// expect stderr: (.*)");
+    private static final Pattern ARGS = Pattern.compile("// args: (.*)");
+    private static final Pattern RUNS = Pattern.compile("// runs: (\\d+)");
+    private static final Pattern REPL = Pattern.compile("// repl$");
+    private static final Pattern PROMPTS = Pattern.compile("^(> |\\.\\.\\. )+");
+
+    private static class Test {
+        final Path path;
+        final List<String> output = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final List<Pattern> stderr = new ArrayList<>();
+        String runtimeError = null;
+        int runtimeErrorLine = 0;
+        Integer exitCode = null;
+        final List<String> args = new ArrayList<>();
+        int runs = 1;
+        boolean repl = false;
+
+        Test(Path path) {
+            this.path = path;
+        }
+
+        int expectedExitCode() {
+            if (exitCode != null) return exitCode;
+            if (!errors.isEmpty()) return 65;
+            if (runtimeError != null) return 70;
+            return 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Path directory = Paths.get(args.length > 0 ? args[0] : "test");
+        final List<Path> scripts;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            scripts = walk.filter(file -> file.toString().endsWith(".lox"))
+                .filter(RunTests::isTest)
+                .sorted()
+                .toList();
+        }
+
+        int passed = 0;
+        int failed = 0;
+        for (final Path script : scripts) {
+            final List<String> failures = run(parse(script));
+            if (failures.isEmpty()) {
+                passed++;
+            } else {
+                failed++;
+                System.out.println("FAIL " + script);
+                for (final String failure : failures) {
+                    System.out.println("    " + failure);
+                }
+            }
+        }
+
+        System.out.println(passed + " passed, " + failed + " failed.");
+        if (failed > 0) System.exit(1);
+    }
+
+    // Scripts without any expectation are helpers, like imported modules.
+    private static boolean isTest(Path script) {
+        try {
+            return Files.readString(script, StandardCharsets.UTF_8).contains("// expect");
+        } catch (IOException error) {
+            return true;
+        }
+    }
+
+    private static Test parse(Path script) throws IOException {
+        final Test test = new Test(script);
+        final List<String> lines = Files.readAllLines(script, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            Matcher match;
+            if ((match = RUNTIME_ERROR.matcher(line)).find()) {
+                test.runtimeError = match.group(1);
+                test.runtimeErrorLine = i + 1;
+            } else if ((match = ERROR.matcher(line)).find()) {
+                test.errors.add(match.group(1));
+            } else if ((match = STDERR.matcher(line)).find()) {
+                test.stderr.add(Pattern.compile(match.group(1)));
+            } else if ((match = EXIT.matcher(line)).find()) {
+                test.exitCode = Integer.parseInt(match.group(1));
+            } else if ((match = EXPECT.matcher(line)).find()) {
+                test.output.add(match.group(1));
+            } else if ((match = ARGS.matcher(line)).find()) {
+                test.args.addAll(Arrays.asList(match.group(1).trim().split("\\s+")));
+            } else if ((match = RUNS.matcher(line)).find()) {
+                test.runs = Integer.parseInt(match.group(1));
+            } else if (REPL.matcher(line).find()) {
+                test.repl = true;
+            }
+        }
+
+        return test;
+    }
+
+    private static List<String> run(Test test) throws IOException, InterruptedException {
+        final Path tmp = Files.createTempDirectory("jlox-test");
+        try {
+            final List<String> failures = new ArrayList<>();
+            for (int i = 0; i < test.runs && failures.isEmpty(); i++) {
+                check(test, tmp, failures);
+            }
+            return failures;
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    private static void check(Test test, Path tmp, List<String> failures) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("linewelder.lox.Lox");
+        for (final String arg : test.args) {
+            command.add(arg.replace("{tmp}", tmp.toString()));
+        }
+        if (!test.repl) command.add(test.path.toString());
+
+        final Path stdout = tmp.resolve("stdout.txt");
+        final Path stderr = tmp.resolve("stderr.txt");
+        final ProcessBuilder builder = new ProcessBuilder(command)
+            .redirectOutput(stdout.toFile())
+            .redirectError(stderr.toFile());
+        if (test.repl) builder.redirectInput(test.path.toFile());
+        final Process process = builder.start();
+        if (!test.repl) process.getOutputStream().close();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            failures.add("Timed out.");
+            return;
+        }
+
+        final List<String> output = new ArrayList<>(Files.readAllLines(stdout, StandardCharsets.UTF_8));
+        if (test.repl) {
+            output.replaceAll(line -> PROMPTS.matcher(line).replaceFirst(""));
+            output.removeIf(String::isEmpty);
+        }
+        final List<String> errors = Files.readAllLines(stderr, StandardCharsets.UTF_8);
+
+        for (int i = 0; i < Math.max(output.size(), test.output.size()); i++) {
+            final String actual = i < output.size() ? output.get(i) : null;
+            final String expected = i < test.output.size() ? test.output.get(i) : null;
+            if (!Objects.equals(actual, expected)) {
+                failures.add("Output line " + (i + 1) + ": expected " + quote(expected) + ", got " + quote(actual) + ".");
+                break;
+            }
+        }
+
+        if (!test.errors.isEmpty()) {
+            for (int i = 0; i < Math.max(errors.size(), test.errors.size()); i++) {
+                final String actual = i < errors.size() ? errors.get(i) : null;
+                final String expected = i < test.errors.size() ? test.errors.get(i) : null;
+                if (actual == null || expected == null || !actual.contains(expected)) {
+                    failures.add("Error " + (i + 1) + ": expected " + quote(expected) + ", got " + quote(actual) + ".");
+                    break;
+                }
+            }
+        }
+
+        if (test.runtimeError != null) {
+            final int index = errors.indexOf(test.runtimeError);
+            final String line = "[line " + test.runtimeErrorLine + "]";
+            if (index < 0 || index + 1 >= errors.size() || !errors.get(index + 1).equals(line)) {
+                failures.add("Expected runtime error " + quote(test.runtimeError) + " " + line + ", got " + errors + ".");
+            }
+        }
+
+        for (final Pattern pattern : test.stderr) {
+            if (errors.stream().noneMatch(line -> pattern.matcher(line).find())) {
+                failures.add("Expected a line on stderr matching " + quote(pattern.pattern()) + ", got " + errors + ".");
+            }
+        }
+
+        if (test.errors.isEmpty() && test.runtimeError == null && test.exitCode == null
+                && test.stderr.isEmpty() && !errors.isEmpty()) {
+            failures.add("Unexpected error output " + errors + ".");
+        }
+
+        if (process.exitValue() != test.expectedExitCode()) {
+            failures.add("Expected exit code " + test.expectedExitCode() + ", got " + process.exitValue() + ".");
+        }
+    }
+
+    private static String quote(String text) {
+        return text == null ? "nothing" : "'" + text + "'";
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>)walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}